@@ -0,0 +1,209 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FakeDiscord type, for standing in for Discord's REST API on the loopback interface.
+ * <p>
+ * Serves webhook executions the way Discord does: every webhook has a bucket of requests per window, and a request
+ * over the limit gets a 429 with the rate-limit headers and a {@code retry_after} in milliseconds. Accepted requests
+ * are answered after a configurable delay, standing in for the round trip to Discord.
+ */
+@ParametersAreNonnullByDefault
+final class FakeDiscord implements AutoCloseable {
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int bucketSize;
+    private final long bucketWindow;
+    private final long responseDelay;
+
+    /**
+     * Starts the stand-in on a free port.
+     *
+     * @param bucketSize
+     *         How many requests a webhook may make per window
+     * @param bucketWindow
+     *         The length of a rate-limit window, in milliseconds
+     * @param responseDelay
+     *         How long accepted requests take to be answered, in milliseconds
+     *
+     * @throws IOException
+     *         If the server could not be bound.
+     */
+    FakeDiscord(final int bucketSize, final long bucketWindow, final long responseDelay) throws IOException {
+        this.bucketSize = Math.max(1, bucketSize);
+        this.bucketWindow = Math.max(1, bucketWindow);
+        this.responseDelay = Math.max(0, responseDelay);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Fake Discord");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/api/webhooks/", this::handleWebhook);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    /**
+     * Fetches the base url to configure as {@code webhook.api_base}.
+     *
+     * @return apiBase The base url.
+     */
+    String getApiBase() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/api";
+    }
+
+    /**
+     * Fetches the amount of messages accepted.
+     *
+     * @return messages The message count.
+     */
+    long getMessageCount() {
+        return messages.sum();
+    }
+
+    /**
+     * Fetches the amount of lines in the accepted messages.
+     *
+     * @return lines The line count.
+     */
+    long getLineCount() {
+        return lines.sum();
+    }
+
+    /**
+     * Fetches the amount of requests answered with a 429.
+     *
+     * @return rateLimited The rate-limited request count.
+     */
+    long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleWebhook(final HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, null);
+                return;
+            }
+            String content = new JSONObject(read(exchange.getRequestBody())).optString("content", "");
+            Bucket bucket = buckets.computeIfAbsent(exchange.getRequestURI().getPath(), path -> new Bucket());
+            long retryAfter = bucket.acquire(System.currentTimeMillis());
+            if (retryAfter > 0) {
+                rateLimited.increment();
+                exchange.getResponseHeaders().add("Retry-After", Long.toString((retryAfter + 999) / 1000));
+                exchange.getResponseHeaders().add("X-RateLimit-Limit", Integer.toString(bucketSize));
+                exchange.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+                exchange.getResponseHeaders().add("X-RateLimit-Reset-After", Double.toString(retryAfter / 1000d));
+                respond(exchange, 429, new JSONObject()
+                    .put("message", "You are being rate limited.")
+                    .put("retry_after", retryAfter)
+                    .put("global", false)
+                    .toString());
+                return;
+            }
+            if (responseDelay > 0) {
+                TimeUnit.MILLISECONDS.sleep(responseDelay);
+            }
+            messages.increment();
+            lines.add(content.isEmpty() ? 0 : content.split("\n", -1).length);
+            respond(exchange, 204, null);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String read(final InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(final HttpExchange exchange, final int code, final @Nullable String body)
+        throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * A fixed-window rate-limit bucket, as Discord keeps per webhook.
+     */
+    private final class Bucket {
+
+        private int remaining;
+        private long resetAt;
+
+        private synchronized long acquire(final long now) {
+            if (now >= resetAt) {
+                remaining = bucketSize;
+                resetAt = now + bucketWindow;
+            }
+            if (remaining > 0) {
+                remaining--;
+                return 0;
+            }
+            return resetAt - now;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import com.discordsrv.sponge.DSRVSponge;
+import com.discordsrv.sponge.listener.ChannelMessageListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.api.event.achievement.GrantAchievementEvent;
+import org.spongepowered.api.event.advancement.AdvancementEvent;
+import org.spongepowered.api.event.entity.DestructEntityEvent;
+import org.spongepowered.api.event.message.MessageChannelEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link ChannelMessageListener} event class filter, which runs for every MessageChannelEvent on the
+ * server thread, against matching the configured prefixes on every event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ListenerFilterBenchmark {
+
+    private static final List<String> EVENTS = Arrays.asList("org.spongepowered.api.event.command.",
+        "org.spongepowered.api.event.economy.", "org.spongepowered.api.event.item.",
+        "org.spongepowered.api.event.block.", "org.spongepowered.api.event.world.",
+        "org.spongepowered.api.event.user.", "com.example.plugin.event.", "org.spongepowered.api.event.entity.ai.",
+        "org.spongepowered.api.event.message.MessageChannelEvent$Chat",
+        "org.spongepowered.api.event.network.ClientConnectionEvent$Join");
+    private static final Class<?>[] EVENT_TYPES = {MessageChannelEvent.class, MessageChannelEvent.Chat.class,
+        ClientConnectionEvent.Join.class, ClientConnectionEvent.Disconnect.class, DestructEntityEvent.Death.class,
+        AdvancementEvent.Grant.class, GrantAchievementEvent.TargetPlayer.class, ListenerFilterBenchmark.class};
+
+    @Param({"true", "false"})
+    private boolean blacklist;
+    private ChannelMessageListener listener;
+    private int next;
+
+    /**
+     * Creates a disabled listener, which registers nothing but filters as configured.
+     */
+    @Setup
+    public void setUp() {
+        listener = new ChannelMessageListener(new DSRVSponge(), blacklist, EVENTS, false);
+    }
+
+    /**
+     * Filters an event class through the listener's per-class cache.
+     *
+     * @return relayed Whether the event is relayed.
+     */
+    @Benchmark
+    public boolean cached() {
+        return listener.isRelayed(nextType());
+    }
+
+    /**
+     * Filters an event class by matching its name against every configured prefix.
+     *
+     * @return relayed Whether the event is relayed.
+     */
+    @Benchmark
+    public boolean uncached() {
+        String name = nextType().getName();
+        return EVENTS.stream().anyMatch(name::startsWith) != blacklist;
+    }
+
+    private Class<?> nextType() {
+        next = (next + 1) % EVENT_TYPES.length;
+        return EVENT_TYPES[next];
+    }
+}
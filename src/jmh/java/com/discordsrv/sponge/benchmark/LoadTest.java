@@ -0,0 +1,287 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import com.discordsrv.core.api.channel.ChatChannelLinker;
+import com.discordsrv.core.api.channel.ChatMessage;
+import com.discordsrv.core.api.common.unit.Named;
+import com.discordsrv.sponge.lookup.MessageChannelChatLookup;
+import com.discordsrv.sponge.metrics.LatencyHistogram;
+import com.discordsrv.sponge.metrics.RelayMetrics;
+import com.discordsrv.sponge.relay.DiscordMessageSender;
+import com.discordsrv.sponge.relay.InboundMessageBuffer;
+import com.discordsrv.sponge.relay.MessageFanOut;
+import com.discordsrv.sponge.relay.RelayDispatcher;
+import com.discordsrv.sponge.relay.RelayMessage;
+import com.discordsrv.sponge.relay.RouteCache;
+import com.discordsrv.sponge.relay.WebhookSender;
+import com.discordsrv.sponge.unit.chat.SpongeGlobalChat;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.entities.Webhook;
+import net.dv8tion.jda.core.requests.RestAction;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.advancement.AdvancementEvent;
+import org.spongepowered.api.event.entity.DestructEntityEvent;
+import org.spongepowered.api.event.message.MessageChannelEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * LoadTest type, for driving the relay with simulated players against a local Discord stand-in.
+ * <p>
+ * The relay is wired the way {@link com.discordsrv.sponge.SpongeContext} wires it, with the {@link SimulatedServer}
+ * in place of the game and the {@link FakeDiscord} in place of Discord. Messages with an author go through the
+ * webhook sender; the bot route and the gateway are not simulated, as JDA can not be pointed anywhere but Discord.
+ * Discord messages are fed into the inbound buffer at a fixed rate instead, as JDA's event thread would.
+ * <p>
+ * Options are given as {@code key=value} arguments; see {@link #DEFAULTS}.
+ */
+@ParametersAreNonnullByDefault
+public final class LoadTest {
+
+    /**
+     * The options and their defaults: rates are per player per minute, except for inbound, which is Discord messages
+     * per minute. Durations are in seconds, other times in milliseconds.
+     */
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    private static final long DRAIN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    static {
+        DEFAULTS.put("players", "100");
+        DEFAULTS.put("duration", "60");
+        DEFAULTS.put("chat", "4");
+        DEFAULTS.put("join", "0.2");
+        DEFAULTS.put("death", "0.3");
+        DEFAULTS.put("advancement", "0.1");
+        DEFAULTS.put("inbound", "30");
+        DEFAULTS.put("bucket_size", "5");
+        DEFAULTS.put("bucket_window", "2000");
+        DEFAULTS.put("rtt", "60");
+        DEFAULTS.put("flush_window", "250");
+        DEFAULTS.put("max_backlog", "500");
+        DEFAULTS.put("queue_capacity", "4096");
+    }
+
+    private LoadTest() {
+    }
+
+    /**
+     * Runs the load test and prints its report.
+     *
+     * @param args
+     *         The options, as key=value
+     *
+     * @throws Exception
+     *         If the stand-in could not be started, or the test was interrupted.
+     */
+    public static void main(final String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2 || !DEFAULTS.containsKey(option[0])) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", expected key=value with key one of "
+                    + DEFAULTS.keySet());
+            }
+            options.put(option[0], option[1]);
+        }
+        int players = Integer.parseInt(options.get("players"));
+        long duration = Long.parseLong(options.get("duration"));
+        double inboundRate = Double.parseDouble(options.get("inbound"));
+
+        ScheduledExecutorService asyncExecutor = Executors.newScheduledThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "Async executor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FakeDiscord discord = new FakeDiscord(Integer.parseInt(options.get("bucket_size")),
+            Long.parseLong(options.get("bucket_window")), Long.parseLong(options.get("rtt")));
+             SimulatedServer server = new SimulatedServer(players, Double.parseDouble(options.get("chat")),
+                 Double.parseDouble(options.get("join")), Double.parseDouble(options.get("death")),
+                 Double.parseDouble(options.get("advancement")))) {
+            RelayMetrics metrics = new RelayMetrics();
+            WebhookSender webhookSender =
+                new WebhookSender(asyncExecutor, true, discord.getApiBase(), "https://crafatar.com/avatars/{uuid}",
+                    500);
+            DiscordMessageSender messageSender = new DiscordMessageSender(asyncExecutor, webhookSender, metrics,
+                Long.parseLong(options.get("flush_window")), Integer.parseInt(options.get("max_backlog")), 30000);
+            MessageFanOut fanOut = new MessageFanOut();
+            InboundMessageBuffer inboundBuffer = new InboundMessageBuffer(20, 2.0, 200, fanOut);
+            MessageChannelChatLookup lookup = new MessageChannelChatLookup(inboundBuffer);
+            SpongeGlobalChat chat = new SpongeGlobalChat(server.getBroadcastChannel());
+            chat.setInboundBuffer(inboundBuffer);
+            lookup.addTranslator(
+                (input, callback) -> callback.onSuccess(input == server.getBroadcastChannel() ? chat : null));
+            TextChannel channel = textChannel();
+            ChatChannelLinker linker = Stubs.of(ChatChannelLinker.class, ImmutableMap.of("translate", arguments -> {
+                @SuppressWarnings("unchecked")
+                FutureCallback<TextChannel> callback = (FutureCallback<TextChannel>) arguments[1];
+                callback.onSuccess(channel);
+                return null;
+            }));
+            RouteCache routeCache = new RouteCache(lookup, linker, metrics);
+            RelayDispatcher dispatcher = new RelayDispatcher(routeCache, messageSender, metrics,
+                Integer.parseInt(options.get("queue_capacity")));
+
+            LongAdder captured = new LongAdder();
+            BiConsumer<MessageChannelEvent, Player> listener = (event, player) -> {
+                RelayMessage message = RelayMessage.capture(kindOf(event), event, player, null);
+                if (message != null) {
+                    captured.increment();
+                    dispatcher.offer(message);
+                }
+            };
+            for (int i = 0; i < players; i++) {
+                fanOut.onJoin(server.getJoinEvent(i));
+            }
+            dispatcher.start();
+            inboundBuffer.start(server.getSyncExecutor());
+            if (inboundRate > 0) {
+                long inboundPeriod = Math.max(1, (long) (TimeUnit.MINUTES.toMicros(1) / inboundRate));
+                asyncExecutor.scheduleAtFixedRate(() -> chat.sendMessage(inboundMessage(), ignored()), 0,
+                    inboundPeriod, TimeUnit.MICROSECONDS);
+            }
+
+            System.out.printf("Load test: %d players for %d s against %s%n", players, duration,
+                discord.getApiBase());
+            long start = System.nanoTime();
+            server.start(listener);
+            TimeUnit.SECONDS.sleep(duration);
+            server.stop();
+            long generated = System.nanoTime() - start;
+            long drainDeadline = System.currentTimeMillis() + DRAIN_MILLIS;
+            while (System.currentTimeMillis() < drainDeadline
+                && !isSettled(captured.sum(), dispatcher, messageSender, metrics)) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            long elapsed = System.nanoTime() - start;
+            report(captured.sum(), dispatcher, messageSender, metrics, discord, server, generated, elapsed);
+
+            dispatcher.stop();
+            inboundBuffer.stop();
+            webhookSender.shutdown();
+        } finally {
+            asyncExecutor.shutdownNow();
+        }
+    }
+
+    private static boolean isSettled(final long captured, final RelayDispatcher dispatcher,
+                                     final DiscordMessageSender messageSender, final RelayMetrics metrics) {
+        long settled = metrics.getLatencies(RelayMetrics.Stage.ACKNOWLEDGED).getCount()
+            + metrics.getFailures(RelayMetrics.Stage.ACKNOWLEDGED) + metrics.getFailures(RelayMetrics.Stage.QUEUED);
+        return dispatcher.getQueueSize() == 0
+            && settled >= captured - dispatcher.getDroppedCount() - messageSender.getDroppedCount();
+    }
+
+    private static void report(final long captured, final RelayDispatcher dispatcher,
+                               final DiscordMessageSender messageSender, final RelayMetrics metrics,
+                               final FakeDiscord discord, final SimulatedServer server, final long generated,
+                               final long elapsed) {
+        LatencyHistogram acknowledged = metrics.getLatencies(RelayMetrics.Stage.ACKNOWLEDGED);
+        System.out.printf("Events: %d captured in %.1f s, %d dropped by the relay queue, %d by the channel backlog%n",
+            captured, generated / 1e9, dispatcher.getDroppedCount(), messageSender.getDroppedCount());
+        System.out.printf("Discord: %d messages carrying %d lines accepted, %d requests rate limited%n",
+            discord.getMessageCount(), discord.getLineCount(), discord.getRateLimitedCount());
+        System.out.printf("Throughput: %.1f lines/s acknowledged over %.1f s%n",
+            acknowledged.getCount() / (elapsed / 1e9), elapsed / 1e9);
+        System.out.println("Latency since capture (ms):");
+        for (RelayMetrics.Stage stage : RelayMetrics.Stage.values()) {
+            LatencyHistogram latencies = metrics.getLatencies(stage);
+            System.out.printf("  %-13s %8d  p50 %8.2f  p95 %8.2f  p99 %8.2f  max %8.2f  %d failed%n",
+                stage.getLabel(), latencies.getCount(), latencies.getPercentileMicros(0.5) / 1000d,
+                latencies.getPercentileMicros(0.95) / 1000d, latencies.getPercentileMicros(0.99) / 1000d,
+                latencies.getMaxMicros() / 1000d, metrics.getFailures(stage));
+        }
+        LatencyHistogram tickTimes = server.getTickTimes();
+        System.out.printf("Server thread time in the plugin per tick (ms): p50 %.3f  p95 %.3f  p99 %.3f  max %.3f"
+                + " over %d ticks%n", tickTimes.getPercentileMicros(0.5) / 1000d,
+            tickTimes.getPercentileMicros(0.95) / 1000d, tickTimes.getPercentileMicros(0.99) / 1000d,
+            tickTimes.getMaxMicros() / 1000d, tickTimes.getCount());
+        System.out.printf("Inbound: %d lines shown to players%n", server.getDeliveredCount());
+    }
+
+    private static RelayMessage.Kind kindOf(final MessageChannelEvent event) {
+        if (event instanceof MessageChannelEvent.Chat) {
+            return RelayMessage.Kind.CHAT;
+        } else if (event instanceof ClientConnectionEvent.Join) {
+            return RelayMessage.Kind.JOIN;
+        } else if (event instanceof DestructEntityEvent.Death) {
+            return RelayMessage.Kind.DEATH;
+        } else if (event instanceof AdvancementEvent.Grant) {
+            return RelayMessage.Kind.ADVANCEMENT;
+        }
+        return RelayMessage.Kind.GENERIC;
+    }
+
+    private static TextChannel textChannel() {
+        Webhook webhook = Stubs.of(Webhook.class, ImmutableMap.of(
+            "getIdLong", args -> 2L,
+            "getId", args -> "2",
+            "getName", args -> "DiscordSRV",
+            "getToken", args -> "token"));
+        RestAction<List<Webhook>> webhooks =
+            new RestAction.EmptyRestAction<>(null, Collections.singletonList(webhook));
+        return Stubs.of(TextChannel.class, ImmutableMap.of(
+            "getIdLong", args -> 1L,
+            "getId", args -> "1",
+            "getName", args -> "general",
+            "getWebhooks", args -> webhooks));
+    }
+
+    private static ChatMessage<Long> inboundMessage() {
+        String name = "DiscordUser" + ThreadLocalRandom.current().nextInt(20);
+        Named sender = Stubs.of(Named.class, ImmutableMap.of("getName", args -> {
+            @SuppressWarnings("unchecked")
+            Consumer<CharSequence> callback = (Consumer<CharSequence>) args[0];
+            callback.accept(name);
+            return null;
+        }));
+        @SuppressWarnings("unchecked")
+        ChatMessage<Long> message = Stubs.of(ChatMessage.class, ImmutableMap.of(
+            "getSender", args -> sender,
+            "getMessage", args -> "[Discord] " + name + ": is the server up?"));
+        return message;
+    }
+
+    private static FutureCallback<Void> ignored() {
+        return new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable final Void result) {
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                throwable.printStackTrace();
+            }
+        };
+    }
+}
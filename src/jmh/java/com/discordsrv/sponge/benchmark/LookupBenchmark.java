@@ -0,0 +1,97 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import com.discordsrv.sponge.lookup.MessageChannelChatLookup;
+import com.discordsrv.sponge.relay.InboundMessageBuffer;
+import com.discordsrv.sponge.relay.MessageFanOut;
+import com.discordsrv.sponge.unit.chat.SpongeChat;
+import com.discordsrv.sponge.unit.chat.SpongeGlobalChat;
+import com.google.common.util.concurrent.FutureCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.text.channel.MessageChannel;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link MessageChannelChatLookup#lookup(MessageChannel, FutureCallback)} with a growing number of
+ * translators, of which only the last knows the channel; this is the cost of every route cache miss.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LookupBenchmark {
+
+    @Param({"1", "5", "10", "20"})
+    private int translators;
+    private MessageChannel channel;
+    private MessageChannelChatLookup lookup;
+
+    /**
+     * Registers the translators.
+     */
+    @Setup
+    public void setUp() {
+        channel = Collections::emptySet;
+        lookup = new MessageChannelChatLookup(new InboundMessageBuffer(100, 5, 1000, new MessageFanOut()));
+        for (int i = 1; i < translators; i++) {
+            MessageChannel other = Collections::emptySet;
+            SpongeChat chat = new SpongeGlobalChat(other);
+            lookup.addTranslator((input, callback) -> callback.onSuccess(input == other ? chat : null));
+        }
+        SpongeChat chat = new SpongeGlobalChat(channel);
+        lookup.addTranslator((input, callback) -> callback.onSuccess(input == channel ? chat : null));
+    }
+
+    /**
+     * Looks up the chat of the channel.
+     *
+     * @param blackhole
+     *         Sink for the result
+     */
+    @Benchmark
+    public void lookup(final Blackhole blackhole) {
+        lookup.lookup(channel, new FutureCallback<SpongeChat>() {
+            @Override
+            public void onSuccess(@Nullable final SpongeChat result) {
+                blackhole.consume(result);
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+        });
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import com.discordsrv.core.api.channel.ChatChannelLinker;
+import com.discordsrv.sponge.lookup.MessageChannelChatLookup;
+import com.discordsrv.sponge.metrics.RelayMetrics;
+import com.discordsrv.sponge.relay.InboundMessageBuffer;
+import com.discordsrv.sponge.relay.MessageFanOut;
+import com.discordsrv.sponge.relay.RelayMessage;
+import com.discordsrv.sponge.relay.RouteCache;
+import com.discordsrv.sponge.unit.chat.SpongeGlobalChat;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.event.message.MessageChannelEvent;
+import org.spongepowered.api.event.message.MessageEvent;
+import org.spongepowered.api.text.channel.MessageChannel;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the chain {@link com.discordsrv.sponge.DSRVSponge#sendMessage} starts: capturing the event on the server
+ * thread, then resolving its route through the cache or, on a miss, the chat lookup and the channel linker. The
+ * dispatcher queue hand-off and the Discord request are left out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RelayChainBenchmark {
+
+    private MessageChannelEvent event;
+    private MessageChannel channel;
+    private RouteCache routeCache;
+
+    /**
+     * Wires the lookup, the linker and the route cache to stubs.
+     */
+    @Setup
+    public void setUp() {
+        channel = Collections::emptySet;
+        MessageEvent.MessageFormatter formatter = new MessageEvent.MessageFormatter(Texts.of("styled"));
+        event = Stubs.of(MessageChannelEvent.class, ImmutableMap.of(
+            "isMessageCancelled", args -> false,
+            "getChannel", args -> Optional.of(channel),
+            "getFormatter", args -> formatter));
+        TextChannel textChannel = Stubs.of(TextChannel.class, ImmutableMap.of(
+            "getIdLong", args -> 1L,
+            "getId", args -> "1"));
+        ChatChannelLinker linker = Stubs.of(ChatChannelLinker.class, ImmutableMap.of(
+            "translate", args -> {
+                @SuppressWarnings("unchecked")
+                FutureCallback<TextChannel> callback = (FutureCallback<TextChannel>) args[1];
+                callback.onSuccess(textChannel);
+                return null;
+            }));
+        MessageChannelChatLookup lookup =
+            new MessageChannelChatLookup(new InboundMessageBuffer(100, 5, 1000, new MessageFanOut()));
+        SpongeGlobalChat chat = new SpongeGlobalChat(channel);
+        lookup.addTranslator((input, callback) -> callback.onSuccess(input == channel ? chat : null));
+        routeCache = new RouteCache(lookup, linker, new RelayMetrics());
+    }
+
+    /**
+     * Captures the event, as the listener does on the server thread.
+     *
+     * @return message The captured message.
+     */
+    @Benchmark
+    public RelayMessage capture() {
+        return RelayMessage.capture(RelayMessage.Kind.CHAT, event, null, null);
+    }
+
+    /**
+     * Resolves a route that is cached.
+     *
+     * @param blackhole
+     *         Sink for the result
+     */
+    @Benchmark
+    public void resolveCached(final Blackhole blackhole) {
+        routeCache.resolve(channel, callback(blackhole));
+    }
+
+    /**
+     * Resolves a route after the cache was cleared, going through the lookup and the linker.
+     *
+     * @param blackhole
+     *         Sink for the result
+     */
+    @Benchmark
+    public void resolveUncached(final Blackhole blackhole) {
+        routeCache.invalidateAll();
+        routeCache.resolve(channel, callback(blackhole));
+    }
+
+    /**
+     * Captures the event and resolves its cached route, as every relayed message does.
+     *
+     * @param blackhole
+     *         Sink for the result
+     */
+    @Benchmark
+    public void captureAndResolve(final Blackhole blackhole) {
+        RelayMessage message = RelayMessage.capture(RelayMessage.Kind.CHAT, event, null, null);
+        if (message != null) {
+            routeCache.resolve(message.getChannel(), message.getTrace(), callback(blackhole));
+        }
+    }
+
+    private static FutureCallback<TextChannel> callback(final Blackhole blackhole) {
+        return new FutureCallback<TextChannel>() {
+            @Override
+            public void onSuccess(@Nullable final TextChannel result) {
+                blackhole.consume(result);
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+        };
+    }
+}
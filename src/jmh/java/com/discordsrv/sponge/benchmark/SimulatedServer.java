@@ -0,0 +1,294 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import com.discordsrv.sponge.metrics.LatencyHistogram;
+import com.google.common.collect.ImmutableMap;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.advancement.AdvancementEvent;
+import org.spongepowered.api.event.entity.DestructEntityEvent;
+import org.spongepowered.api.event.message.MessageChannelEvent;
+import org.spongepowered.api.event.message.MessageEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageChannel;
+import org.spongepowered.api.text.channel.MessageReceiver;
+import org.spongepowered.api.util.Tristate;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * SimulatedServer type, for standing in for the Sponge server, its scheduler and its online players.
+ * <p>
+ * A single "Server thread" runs the tick task at 20 ticks per second, as well as anything the plugin schedules on it
+ * through {@link #getSyncExecutor()}. Every tick, each player fires chat, join, death and advancement events at the
+ * configured rates; the time the server thread spends in the plugin, from handling those events to running its own
+ * tasks, is recorded per tick.
+ */
+@ParametersAreNonnullByDefault
+final class SimulatedServer implements AutoCloseable {
+
+    private static final long TICK_MILLIS = 50;
+    private static final double TICKS_PER_MINUTE = 1200;
+    private static final String[] CHAT = {"hello", "anyone up for the nether?", "**lag** again :(",
+        "where is the _village_ again", "gg", "brb getting food", "selling diamonds at spawn, 3 each",
+        "did the server restart?"};
+
+    private final LongAdder delivered = new LongAdder();
+    private final LatencyHistogram tickTimes = new LatencyHistogram();
+    private final List<Player> players = new ArrayList<>();
+    private final List<SimulatedPlayer> simulated = new ArrayList<>();
+    private final MessageChannel broadcastChannel;
+    private final ServerThread serverThread = new ServerThread();
+    private final double chatChance;
+    private final double joinChance;
+    private final double deathChance;
+    private final double advancementChance;
+    private ScheduledFuture<?> tickTask;
+    private long pluginNanos;
+    private boolean inTick;
+
+    /**
+     * Creates the players, without starting to tick.
+     *
+     * @param playerCount
+     *         How many players are online
+     * @param chatRate
+     *         Chat messages per player per minute
+     * @param joinRate
+     *         Joins per player per minute
+     * @param deathRate
+     *         Deaths per player per minute
+     * @param advancementRate
+     *         Advancements per player per minute
+     */
+    SimulatedServer(final int playerCount, final double chatRate, final double joinRate, final double deathRate,
+                    final double advancementRate) {
+        this.chatChance = chatRate / TICKS_PER_MINUTE;
+        this.joinChance = joinRate / TICKS_PER_MINUTE;
+        this.deathChance = deathRate / TICKS_PER_MINUTE;
+        this.advancementChance = advancementRate / TICKS_PER_MINUTE;
+        List<MessageReceiver> members = new ArrayList<>();
+        this.broadcastChannel = () -> Collections.unmodifiableList(members);
+        for (int i = 0; i < playerCount; i++) {
+            SimulatedPlayer player = new SimulatedPlayer("Player" + i);
+            simulated.add(player);
+            players.add(player.player);
+            members.add(player.player);
+        }
+    }
+
+    /**
+     * Fetches the channel every player receives broadcasts on.
+     *
+     * @return channel The broadcast channel.
+     */
+    MessageChannel getBroadcastChannel() {
+        return broadcastChannel;
+    }
+
+    /**
+     * Fetches the executor running on the server thread.
+     *
+     * @return executor The sync executor.
+     */
+    ScheduledThreadPoolExecutor getSyncExecutor() {
+        return serverThread;
+    }
+
+    /**
+     * Fetches the online players.
+     *
+     * @return players The players.
+     */
+    List<Player> getPlayers() {
+        return Collections.unmodifiableList(players);
+    }
+
+    /**
+     * Fetches the join event of a player, as fired when they logged in.
+     *
+     * @param player
+     *         The index of the player
+     *
+     * @return event The join event.
+     */
+    ClientConnectionEvent.Join getJoinEvent(final int player) {
+        return simulated.get(player).join;
+    }
+
+    /**
+     * Fetches the amount of chat lines players received.
+     *
+     * @return delivered The delivered count.
+     */
+    long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * Fetches the time the server thread spent in the plugin per tick.
+     *
+     * @return tickTimes The histogram of plugin time per tick.
+     */
+    LatencyHistogram getTickTimes() {
+        return tickTimes;
+    }
+
+    /**
+     * Starts ticking, handing every fired event to the listener on the server thread.
+     *
+     * @param listener
+     *         Invoked with each event and the player that fired it, as the plugin's listeners are
+     */
+    synchronized void start(final BiConsumer<MessageChannelEvent, Player> listener) {
+        if (tickTask == null) {
+            tickTask = serverThread.scheduleAtFixedRate(() -> tick(listener), 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops firing events; tasks the plugin scheduled keep running until {@link #close()}.
+     */
+    synchronized void stop() {
+        if (tickTask != null) {
+            tickTask.cancel(false);
+            tickTask = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+        serverThread.shutdownNow();
+    }
+
+    private void tick(final BiConsumer<MessageChannelEvent, Player> listener) {
+        // what the plugin did on the server thread since the last tick, then this tick's events
+        tickTimes.record(pluginNanos);
+        pluginNanos = 0;
+        inTick = true;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (SimulatedPlayer player : simulated) {
+            fire(listener, player, random.nextDouble() < chatChance ? player.chat[random.nextInt(CHAT.length)] : null);
+            fire(listener, player, random.nextDouble() < joinChance ? player.join : null);
+            fire(listener, player, random.nextDouble() < deathChance ? player.death : null);
+            fire(listener, player, random.nextDouble() < advancementChance ? player.advancement : null);
+        }
+    }
+
+    private void fire(final BiConsumer<MessageChannelEvent, Player> listener, final SimulatedPlayer player,
+                      final @Nullable MessageChannelEvent event) {
+        if (event == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        listener.accept(event, player.player);
+        pluginNanos += System.nanoTime() - start;
+    }
+
+    private static <T extends MessageChannelEvent> T event(final Class<T> type, final Player player,
+                                                           final MessageChannel channel, final Text message) {
+        MessageEvent.MessageFormatter formatter = new MessageEvent.MessageFormatter(message);
+        return Stubs.of(type, ImmutableMap.of(
+            "isMessageCancelled", args -> false,
+            "getChannel", args -> Optional.of(channel),
+            "getFormatter", args -> formatter,
+            "getTargetEntity", args -> player));
+    }
+
+    /**
+     * A player and the events they fire.
+     */
+    private final class SimulatedPlayer {
+
+        private final Player player;
+        private final MessageChannelEvent.Chat[] chat = new MessageChannelEvent.Chat[CHAT.length];
+        private final ClientConnectionEvent.Join join;
+        private final DestructEntityEvent.Death death;
+        private final AdvancementEvent.Grant advancement;
+
+        private SimulatedPlayer(final String name) {
+            UUID uniqueId = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+            player = Stubs.of(Player.class, ImmutableMap.<String, Function<Object[], Object>>builder()
+                .put("getUniqueId", args -> uniqueId)
+                .put("getName", args -> name)
+                .put("getActiveContexts", args -> Collections.emptySet())
+                .put("getPermissionValue", args -> Tristate.UNDEFINED)
+                .put("hasPermission", args -> true)
+                .put("sendMessage", args -> {
+                    delivered.increment();
+                    return null;
+                })
+                .build());
+            for (int i = 0; i < CHAT.length; i++) {
+                chat[i] = event(MessageChannelEvent.Chat.class, player, broadcastChannel,
+                    Text.of("<" + name + "> " + CHAT[i]));
+            }
+            join = event(ClientConnectionEvent.Join.class, player, broadcastChannel,
+                Text.of(name + " joined the game"));
+            death = event(DestructEntityEvent.Death.class, player, broadcastChannel,
+                Text.of(name + " was slain by Zombie"));
+            advancement = event(AdvancementEvent.Grant.class, player, broadcastChannel,
+                Text.of(name + " has made the advancement [Stone Age]"));
+        }
+    }
+
+    /**
+     * The server thread; time spent in tasks other than the tick itself is counted towards the next tick.
+     */
+    private final class ServerThread extends ScheduledThreadPoolExecutor {
+
+        private long taskStart;
+
+        private ServerThread() {
+            super(1, runnable -> {
+                Thread thread = new Thread(runnable, "Server thread");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        protected void beforeExecute(final Thread thread, final Runnable runnable) {
+            inTick = false;
+            taskStart = System.nanoTime();
+        }
+
+        @Override
+        protected void afterExecute(final Runnable runnable, final Throwable throwable) {
+            if (!inTick) {
+                pluginNanos += System.nanoTime() - taskStart;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Stubs type, for standing in for Sponge, JDA and DiscordSRV-Core interfaces without a running server or bot.
+ */
+@ParametersAreNonnullByDefault
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * Creates a stub of an interface. Methods without an answer throw {@link UnsupportedOperationException}, except
+     * for those of {@link Object}, which behave as for any other object.
+     *
+     * @param type
+     *         The interface to stub
+     * @param answers
+     *         The answers by method name, given the call's arguments
+     * @param <T>
+     *         The interface type
+     *
+     * @return stub The stub.
+     */
+    static <T> T of(final Class<T> type, final Map<String, Function<Object[], Object>> answers) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] {type},
+            (proxy, method, args) -> {
+                Function<Object[], Object> answer = answers.get(method.getName());
+                if (answer != null) {
+                    return answer.apply(args == null ? new Object[0] : args);
+                }
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                    default:
+                        throw new UnsupportedOperationException(type.getName() + "#" + method.getName());
+                }
+            }));
+    }
+}
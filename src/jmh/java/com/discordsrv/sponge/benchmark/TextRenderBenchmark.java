@@ -0,0 +1,126 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import com.discordsrv.sponge.text.TextRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.event.message.MessageEvent;
+import org.spongepowered.api.text.Text;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rendering {@link Text} into its plain and Discord markdown forms, as done once per relayed message.
+ * <p>
+ * {@link #capture} and {@link #legacy} start from the same event formatter: the first as the relay captures events
+ * now, the second as it did before the single pass renderer, building the formatter's text twice and serializing it
+ * with {@link Text#toPlain()}. {@link #render} and {@link #plain} compare the markdown conversion with the plain text
+ * serialization messages were sent as before it. The {@code jmh} task runs with the GC profiler, whose {@code gc.alloc.rate.norm}
+ * shows the bytes each allocates per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TextRenderBenchmark {
+
+    @Param({"plain", "styled", "nested", "deep"})
+    private String shape;
+    private Text text;
+    private MessageEvent.MessageFormatter formatter;
+
+    /**
+     * Builds the text to render and an event formatter holding it.
+     */
+    @Setup
+    public void setUp() {
+        Texts.installPlainSerializer();
+        text = Texts.of(shape);
+        formatter = new MessageEvent.MessageFormatter(text);
+    }
+
+    /**
+     * Renders the text and reads both forms.
+     *
+     * @param blackhole
+     *         Sink for the results
+     */
+    @Benchmark
+    public void render(final Blackhole blackhole) {
+        TextRenderer renderer = TextRenderer.get().render(text);
+        blackhole.consume(renderer.getPlain());
+        blackhole.consume(renderer.getDiscord());
+    }
+
+    /**
+     * Serializes the text to plain text only, the way messages were sent to Discord before the markdown conversion,
+     * for comparison with {@link #render}.
+     *
+     * @param blackhole
+     *         Sink for the result
+     */
+    @Benchmark
+    public void plain(final Blackhole blackhole) {
+        blackhole.consume(text.toPlain());
+    }
+
+    /**
+     * Captures the formatter's text the way the relay does: built once, then rendered into both forms in one pass.
+     *
+     * @param blackhole
+     *         Sink for the results
+     */
+    @Benchmark
+    public void capture(final Blackhole blackhole) {
+        Text built = formatter.toText();
+        if (built.isEmpty()) {
+            return;
+        }
+        TextRenderer renderer = TextRenderer.get().render(built);
+        blackhole.consume(renderer.getPlain());
+        blackhole.consume(renderer.getDiscord());
+    }
+
+    /**
+     * Captures the formatter's text the way the relay did before, for comparison: built once for the emptiness check
+     * and again to serialize it to plain text.
+     *
+     * @param blackhole
+     *         Sink for the result
+     */
+    @Benchmark
+    public void legacy(final Blackhole blackhole) {
+        if (formatter.toText().isEmpty()) {
+            return;
+        }
+        blackhole.consume(formatter.toText().toPlain());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import org.spongepowered.api.text.LiteralText;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.action.TextActions;
+import org.spongepowered.api.text.format.TextStyle;
+import org.spongepowered.api.text.serializer.SafeTextSerializer;
+import org.spongepowered.api.text.serializer.TextSerializers;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+
+/**
+ * Texts type, for building the texts the benchmarks render.
+ * <p>
+ * Styles are created directly rather than through {@link org.spongepowered.api.text.format.TextStyles}, whose
+ * constants are only filled in by a running Sponge implementation.
+ */
+@ParametersAreNonnullByDefault
+final class Texts {
+
+    private static final TextStyle BOLD = new TextStyle(true, null, null, null, null);
+    private static final TextStyle ITALIC = new TextStyle(null, true, null, null, null);
+    private static final TextStyle NOT_BOLD = new TextStyle(false, null, null, null, null);
+
+    private Texts() {
+    }
+
+    /**
+     * Builds a text of the given shape.
+     *
+     * @param shape
+     *         plain: a chat line without formatting; styled: a chat line with a styled name, markdown characters and
+     *         a link; nested: a tree with a hundred styled leaves; deep: a chain of fifty nested texts
+     *
+     * @return text The text.
+     */
+    static Text of(final String shape) {
+        switch (shape) {
+            case "plain":
+                return Text.of("<Notch> has anyone seen the diamonds I left in the chest near spawn?");
+            case "styled":
+                return Text.builder("<").append(Text.builder("Notch").style(BOLD).build(), Text.of("> "),
+                    Text.builder("*please* don't _touch_ my `chest`").style(ITALIC).build(), Text.of(" see "),
+                    Text.builder("the wiki").onClick(TextActions.openUrl(url("https://minecraft.gamepedia.com")))
+                        .build()).build();
+            case "nested":
+                Text.Builder root = Text.builder();
+                for (int i = 0; i < 10; i++) {
+                    Text.Builder branch = Text.builder().style(i % 2 == 0 ? BOLD : ITALIC);
+                    for (int j = 0; j < 10; j++) {
+                        branch.append(Text.builder("leaf " + j + " ").style(j % 3 == 0 ? NOT_BOLD : ITALIC).build());
+                    }
+                    root.append(branch.build());
+                }
+                return root.build();
+            case "deep":
+                Text deep = Text.of("bottom");
+                for (int i = 0; i < 50; i++) {
+                    deep = Text.builder("level " + i + " ").style(i % 2 == 0 ? BOLD : NOT_BOLD).append(deep).build();
+                }
+                return deep;
+            default:
+                throw new IllegalArgumentException("Unknown text shape " + shape);
+        }
+    }
+
+    /**
+     * Fills in {@link TextSerializers#PLAIN}, which {@link Text#toPlain()} serializes with, the way the Sponge
+     * implementation's plain serializer works: the content of every literal in the tree, in order.
+     */
+    static synchronized void installPlainSerializer() {
+        if (TextSerializers.PLAIN instanceof PlainSerializer) {
+            return;
+        }
+        SafeTextSerializer serializer = Stubs.of(PlainSerializer.class, ImmutableMap.of(
+            "getId", args -> "plain",
+            "getName", args -> "Plain",
+            "serialize", args -> serialize((Text) args[0], true),
+            "serializeSingle", args -> serialize((Text) args[0], false)));
+        try {
+            Field field = TextSerializers.class.getField("PLAIN");
+            Field modifiers = Field.class.getDeclaredField("modifiers");
+            modifiers.setAccessible(true);
+            modifiers.setInt(field, field.getModifiers() & ~Modifier.FINAL);
+            field.set(null, serializer);
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalStateException("Can't install the plain text serializer", exception);
+        }
+    }
+
+    private static String serialize(final Text text, final boolean children) {
+        StringBuilder builder = new StringBuilder();
+        for (Text part : children ? text.withChildren() : Collections.singleton(text)) {
+            if (part instanceof LiteralText) {
+                builder.append(((LiteralText) part).getContent());
+            }
+        }
+        return builder.toString();
+    }
+
+    private static URL url(final String spec) {
+        try {
+            return new URL(spec);
+        } catch (MalformedURLException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+    /**
+     * The plain serializer installed by {@link #installPlainSerializer()}.
+     */
+    interface PlainSerializer extends SafeTextSerializer {
+    }
+}
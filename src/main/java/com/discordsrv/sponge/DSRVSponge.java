@@ -20,37 +20,57 @@ package com.discordsrv.sponge;
 import com.discordsrv.core.api.dsrv.platform.Platform;
 import com.discordsrv.core.channel.LocalChatChannelLinker;
 import com.discordsrv.core.conf.Configuration;
+import com.discordsrv.sponge.command.StatsCommand;
+import com.discordsrv.sponge.command.ToggleCommand;
+import com.discordsrv.sponge.command.WhoisCommand;
+import com.discordsrv.sponge.console.ConsoleCommandQueue;
+import com.discordsrv.sponge.console.ConsoleLogStreamer;
+import com.discordsrv.sponge.link.CachingPlayerUserLinker;
+import com.discordsrv.sponge.link.LinkPrefetcher;
 import com.discordsrv.sponge.listener.*;
-import com.discordsrv.sponge.unit.chat.SpongeChat;
+import com.discordsrv.sponge.metrics.MetricsExporter;
+import com.discordsrv.sponge.lookup.ScoreboardTeamIndex;
+import com.discordsrv.sponge.relay.DiscordMessageSender;
+import com.discordsrv.sponge.relay.InboundMessageBuffer;
+import com.discordsrv.sponge.relay.RelayDispatcher;
+import com.discordsrv.sponge.relay.RelayMessage;
+import com.discordsrv.sponge.relay.WebhookSender;
+import com.discordsrv.sponge.trace.Trace;
+import com.discordsrv.sponge.trace.Tracer;
+import com.discordsrv.sponge.sync.TeamRoleSynchronizer;
 import com.discordsrv.sponge.unit.chat.SpongeGlobalChat;
-import com.google.common.util.concurrent.FutureCallback;
 import com.google.inject.Inject;
 import lombok.Getter;
-import net.dv8tion.jda.core.entities.TextChannel;
 import org.spongepowered.api.Game;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.command.spec.CommandSpec;
 import org.spongepowered.api.config.ConfigDir;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.game.state.GameAboutToStartServerEvent;
 import org.spongepowered.api.event.game.state.GamePreInitializationEvent;
+import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
 import org.spongepowered.api.event.message.MessageChannelEvent;
 import org.spongepowered.api.plugin.Plugin;
 import org.spongepowered.api.plugin.PluginContainer;
+import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.channel.MessageChannel;
+import org.slf4j.Logger;
 import org.yaml.snakeyaml.Yaml;
 
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.naming.ConfigurationException;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main plugin class for DiscordSRV-Sponge.
@@ -63,6 +83,8 @@ public class DSRVSponge implements Platform<SpongeContext> {
     @Inject @ConfigDir(sharedRoot = false) private File configDirectory;
     @Inject private PluginContainer pluginContainer;
     @Inject private Game game;
+    @Inject private Logger logger;
+    private boolean globalChatRegistered;
 
     /**
      * GamePreInitializationEvent listener.
@@ -72,6 +94,7 @@ public class DSRVSponge implements Platform<SpongeContext> {
      */
     @Listener
     public void onGamePreInitialization(GamePreInitializationEvent event) {
+        long bootStart = System.nanoTime();
         try {
             // config
             if (!configDirectory.exists()) {
@@ -85,22 +108,28 @@ public class DSRVSponge implements Platform<SpongeContext> {
                 .orElseThrow(() -> new RuntimeException("Config missing from the jar")).getUrl();
             File userConfig = new File(configDirectory, "config.yaml");
             if (!userConfig.exists()) {
-                userConfig.createNewFile();
-                InputStream inputStream = defaultConfigUrl.openStream();
-                FileOutputStream outputStream = new FileOutputStream(userConfig);
-                int bit;
-                while ((bit = inputStream.read()) != -1) {
-                    outputStream.write(bit);
+                try (InputStream inputStream = defaultConfigUrl.openStream()) {
+                    Files.copy(inputStream, userConfig.toPath());
                 }
-                inputStream.close();
-                outputStream.close();
             }
+            String consoleChannel = readConsoleChannel(userConfig);
             Configuration configuration = Configuration
                 .getStandardConfiguration(new Yaml(), protectedConfigUrl, userConfig.toURI().toURL(), configUrl);
             // config mappings
             Map<String, String> mappings = new HashMap<>();
             mappings.put("plugin", SpongeContext.class.getName());
             mappings.put("channels", LocalChatChannelLinker.class.getName());
+            mappings.put("message_sender", DiscordMessageSender.class.getName());
+            mappings.put("webhook", WebhookSender.class.getName());
+            mappings.put("relay", RelayDispatcher.class.getName());
+            mappings.put("inbound", InboundMessageBuffer.class.getName());
+            mappings.put("console", ConsoleLogStreamer.class.getName());
+            mappings.put("console_commands", ConsoleCommandQueue.class.getName());
+            mappings.put("teams", ScoreboardTeamIndex.class.getName());
+            mappings.put("team_sync", TeamRoleSynchronizer.class.getName());
+            mappings.put("link_cache", CachingPlayerUserLinker.class.getName());
+            mappings.put("metrics", MetricsExporter.class.getName());
+            mappings.put("tracing", Tracer.class.getName());
             mappings.put("chat_message_listener", ChatMessageListener.class.getName());
             mappings.put("join_leave_message_listener", JoinLeaveMessageListener.class.getName());
             mappings.put("death_message_listener", DeathMessageListener.class.getName());
@@ -111,13 +140,7 @@ public class DSRVSponge implements Platform<SpongeContext> {
             // context
             context = configuration
                 .create(SpongeContext.class, configuration, game.getScheduler().createSyncExecutor(this),
-                    game.getScheduler().createAsyncExecutor(this), game);
-            // global channel translator
-            context.getMessageChannelChatLookup().addTranslator((original, callback) -> {
-                if (original.getClass().getName().startsWith(MessageChannel.class.getName())) {
-                    callback.onSuccess(new SpongeGlobalChat(original));
-                }
-            });
+                    game.getScheduler().createAsyncExecutor(this), game, configDirectory.toPath(), consoleChannel);
             // listeners
             configuration.create(ChatMessageListener.class, this);
             configuration.create(JoinLeaveMessageListener.class, this);
@@ -130,66 +153,151 @@ public class DSRVSponge implements Platform<SpongeContext> {
                 configuration.create(AchievementMessageListener.class, this);
             }
             context.getConfiguration().create(ChannelMessageListener.class, this);
+            game.getEventManager().registerListeners(this, context.getMessageFanOut());
+            game.getEventManager().registerListeners(this, context.getOnlinePlayerRegistry());
+            game.getEventManager().registerListeners(this, context.getTeamIndex());
+            game.getEventManager().registerListeners(this, context.getTeamRoleSynchronizer());
+            game.getEventManager().registerListeners(this, new LinkPrefetcher(context));
+            // commands
+            game.getCommandManager().register(this, CommandSpec.builder()
+                .child(CommandSpec.builder()
+                    .description(Text.of("Toggles whether Discord messages are shown to you"))
+                    .executor(new ToggleCommand(context.getMessageFanOut()))
+                    .build(), "toggle")
+                .child(CommandSpec.builder()
+                    .description(Text.of("Shows how the relay to Discord is keeping up"))
+                    .permission("discordsrv.stats")
+                    .executor(new StatsCommand(context))
+                    .build(), "stats")
+                .child(CommandSpec.builder()
+                    .description(Text.of("Finds Discord users by id, name or nickname and shows their linked players"))
+                    .permission("discordsrv.whois")
+                    .arguments(GenericArguments.remainingJoinedStrings(Text.of("user")))
+                    .executor(new WhoisCommand(context))
+                    .build(), "whois")
+                .build(), "discordsrv");
+            context.getInboundBuffer().start(context.getSyncExecutor());
+            context.getMessageFanOut().start(game, context.getSyncExecutor());
+            context.getConsoleLogStreamer().start();
+            context.getConsoleCommandQueue().start();
+            context.getTeamIndex().start();
+            context.getMetricsExporter().start();
+            context.getTracer().start();
+            // discord; relayed messages wait in the dispatcher queue until the bot is logged in
+            context.connect().whenComplete((jda, throwable) -> {
+                if (throwable != null) {
+                    logger.error("Could not log in to Discord, messages will not be relayed", throwable);
+                    return;
+                }
+                int buffered = context.getRelayDispatcher().getQueueSize();
+                context.getRelayDispatcher().start();
+                context.getTeamRoleSynchronizer().start();
+                logger.info("Logged in to Discord in {} ms, relaying {} messages sent meanwhile",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootStart), buffered);
+            });
+            logger.info("Started in {} ms, logging in to Discord in the background",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootStart));
         } catch (IOException | ConfigurationException | IllegalAccessException | InvocationTargetException | InstantiationException exception) {
             exception.printStackTrace();
         }
     }
 
     /**
-     * Sends a message based on the MessageChannelEvent. TODO move to a class in the context
+     * GameAboutToStartServerEvent listener, registering the global channel translator once the server exists.
      *
      * @param event
-     *         MessageChannelEvent
-     * @param player
-     *         the Player that sent the message
+     *         GameAboutToStartServerEvent
      */
-    public void sendMessage(final MessageChannelEvent event, final @Nullable Player player) {
-        Optional<MessageChannel> messageChannel = event.getChannel();
-        if (!messageChannel.isPresent() || event.getFormatter().toText().isEmpty() || event.isMessageCancelled()) {
+    @Listener
+    public void onGameAboutToStartServer(GameAboutToStartServerEvent event) {
+        if (context == null || globalChatRegistered) {
             return;
         }
-        context.getMessageChannelChatLookup().lookup(messageChannel.get(), new FutureCallback<SpongeChat>() {
-            @Override
-            public void onSuccess(@Nullable final SpongeChat result) {
-                if (result == null) {
-                    return;
-                }
-                sendMessage(result, event.getFormatter().toText().toPlain(), player);
+        globalChatRegistered = true;
+        context.getMessageChannelChatLookup().addTranslator((original, callback) -> {
+            if (original.getClass().getName().startsWith(MessageChannel.class.getName())) {
+                callback.onSuccess(new SpongeGlobalChat(original));
             }
+        }, new SpongeGlobalChat(game.getServer().getBroadcastChannel()));
+    }
 
-            @Override
-            public void onFailure(final Throwable throwable) {
-                throwable.printStackTrace();
+    /**
+     * GameStoppingServerEvent listener.
+     *
+     * @param event
+     *         GameStoppingServerEvent
+     */
+    @Listener
+    public void onGameStopping(GameStoppingServerEvent event) {
+        if (context == null) {
+            return;
+        }
+        context.getInboundBuffer().stop();
+        context.getMessageFanOut().stop();
+        context.getConsoleLogStreamer().stop();
+        context.getConsoleCommandQueue().stop();
+        context.getTeamRoleSynchronizer().stop();
+        context.getMetricsExporter().stop();
+        context.getTeamIndex().stop();
+        try {
+            context.getRelayDispatcher().stop();
+            context.getTracer().stop();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        context.getWebhookSender().shutdown();
+        if (context.getLinkStore() != null) {
+            try {
+                context.getLinkStore().close();
+            } catch (IOException exception) {
+                exception.printStackTrace();
             }
-        });
+        }
     }
 
     /**
-     * TODO send message with formatting & stuff. TODO move to a class in the context
+     * Sends a message based on the MessageChannelEvent. Only a snapshot of the event is taken on the calling thread, the
+     * lookups happen on the {@link RelayDispatcher} thread.
      *
-     * @param spongeChat
-     *         SpongeChat that the message came from
+     * @param event
+     *         MessageChannelEvent
+     * @param kind
+     *         The kind of event
      * @param player
-     *         the Player that send the message
+     *         the Player that sent the message
      */
-    public void sendMessage(final SpongeChat spongeChat, final String message, final @Nullable Player player) {
-        context.getChatChannelLinker().translate(spongeChat, new FutureCallback<TextChannel>() {
-            @Override
-            public void onSuccess(@Nullable final TextChannel result) {
-                if (result == null) {
-                    return;
-                }
-                if (player != null) {
-                    result.sendMessage(message + " (" + player.getName() + ")").queue();
-                } else {
-                    result.sendMessage(message).queue();
-                }
-            }
+    public void sendMessage(final MessageChannelEvent event, final RelayMessage.Kind kind,
+                            final @Nullable Player player) {
+        Trace trace = context.getTracer().sample();
+        if (trace != null) {
+            trace.span("listener", kind + " " + event.getClass().getName());
+        }
+        RelayMessage message = RelayMessage.capture(kind, event, player, trace);
+        if (message != null) {
+            context.getRelayDispatcher().offer(message);
+        } else if (trace != null) {
+            trace.span("skipped", "cancelled, no channel or empty message");
+        }
+    }
 
-            @Override
-            public void onFailure(@Nonnull final Throwable throwable) {
-                throwable.printStackTrace();
-            }
-        });
+    /**
+     * Reads the console channel the core's channel linker takes commands from, so the log and the command reports go
+     * to the same channel without a key of their own.
+     *
+     * @param config
+     *         The user's config file
+     *
+     * @return channel The channels.console_channel config option, or an empty string if it isn't set.
+     *
+     * @throws IOException
+     *         If the config file can't be read.
+     */
+    private static String readConsoleChannel(final File config) throws IOException {
+        try (InputStream inputStream = new FileInputStream(config)) {
+            Object root = new Yaml().load(inputStream);
+            Object channels = root instanceof Map ? ((Map<?, ?>) root).get("channels") : null;
+            Object channel = channels instanceof Map ? ((Map<?, ?>) channels).get("console_channel") : null;
+            return channel == null ? "" : channel.toString();
+        }
     }
 }
@@ -20,7 +20,6 @@ package com.discordsrv.sponge;
 import com.discordsrv.core.api.channel.ChatChannelLinker;
 import com.discordsrv.core.api.dsrv.Context;
 import com.discordsrv.core.api.role.TeamRoleLinker;
-import com.discordsrv.core.api.user.PlayerUserLinker;
 import com.discordsrv.core.auth.PlayerUserAuthenticator;
 import com.discordsrv.core.channel.LocalChatChannelLinker;
 import com.discordsrv.core.conf.Configuration;
@@ -30,10 +29,29 @@ import com.discordsrv.core.discord.DSRVJDABuilder;
 import com.discordsrv.core.role.LocalTeamRoleLinker;
 import com.discordsrv.core.user.LocalPlayerUserLinker;
 import com.discordsrv.core.user.UplinkedPlayerUserLinker;
+import com.discordsrv.sponge.console.ConsoleCommandQueue;
+import com.discordsrv.sponge.console.ConsoleLogStreamer;
+import com.discordsrv.sponge.link.BulkPlayerUserLinker;
+import com.discordsrv.sponge.link.CachingPlayerUserLinker;
+import com.discordsrv.sponge.link.LinkStore;
+import com.discordsrv.sponge.link.StoredPlayerUserLinker;
+import com.discordsrv.sponge.lookup.DiscordUserIndex;
 import com.discordsrv.sponge.lookup.MessageChannelChatLookup;
+import com.discordsrv.sponge.lookup.OnlinePlayerRegistry;
+import com.discordsrv.sponge.lookup.ScoreboardTeamIndex;
 import com.discordsrv.sponge.lookup.SpongeChatChannelLookup;
 import com.discordsrv.sponge.lookup.SpongePlayerUserLookup;
 import com.discordsrv.sponge.lookup.SpongeTeamRoleLookup;
+import com.discordsrv.sponge.metrics.MetricsExporter;
+import com.discordsrv.sponge.metrics.RelayMetrics;
+import com.discordsrv.sponge.relay.DiscordMessageSender;
+import com.discordsrv.sponge.relay.InboundMessageBuffer;
+import com.discordsrv.sponge.relay.MessageFanOut;
+import com.discordsrv.sponge.relay.RelayDispatcher;
+import com.discordsrv.sponge.relay.RouteCache;
+import com.discordsrv.sponge.relay.WebhookSender;
+import com.discordsrv.sponge.sync.TeamRoleSynchronizer;
+import com.discordsrv.sponge.trace.Tracer;
 import com.discordsrv.sponge.unit.SpongeConsole;
 import lombok.Getter;
 import net.dv8tion.jda.core.JDA;
@@ -41,10 +59,14 @@ import org.apache.commons.collections4.bidimap.DualLinkedHashBidiMap;
 import org.spongepowered.api.Game;
 import org.spongepowered.api.scheduler.SpongeExecutorService;
 
+import javax.annotation.Nullable;
 import javax.naming.ConfigurationException;
-import javax.security.auth.login.LoginException;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 
 /**
@@ -55,15 +77,34 @@ public class SpongeContext implements Context {
 
     private final Configuration configuration;
     private final PlayerUserAuthenticator userAuthenticator;
-    private final PlayerUserLinker playerUserLinker;
+    private final BulkPlayerUserLinker playerUserLinker;
+    private final @Nullable LinkStore linkStore;
     private final SpongePlayerUserLookup playerUserLookup;
     private final TeamRoleLinker teamRoleLinker;
     private final SpongeTeamRoleLookup teamRoleLookup;
     private final ChatChannelLinker chatChannelLinker;
     private final SpongeChatChannelLookup chatChannelLookup;
-    private final JDA jda;
+    /**
+     * Null until {@link #connect()} has logged in.
+     */
+    private volatile @Nullable JDA jda;
     // Sponge specific
     private final MessageChannelChatLookup messageChannelChatLookup;
+    private final OnlinePlayerRegistry onlinePlayerRegistry;
+    private final DiscordUserIndex userIndex;
+    private final DiscordMessageSender messageSender;
+    private final WebhookSender webhookSender;
+    private final RelayDispatcher relayDispatcher;
+    private final RelayMetrics relayMetrics;
+    private final MetricsExporter metricsExporter;
+    private final Tracer tracer;
+    private final RouteCache routeCache;
+    private final InboundMessageBuffer inboundBuffer;
+    private final MessageFanOut messageFanOut;
+    private final ConsoleLogStreamer consoleLogStreamer;
+    private final ConsoleCommandQueue consoleCommandQueue;
+    private final ScoreboardTeamIndex teamIndex;
+    private final TeamRoleSynchronizer teamRoleSynchronizer;
     private final SpongeExecutorService syncExecutor;
     private final SpongeExecutorService asyncExecutor;
     private final Game game;
@@ -77,6 +118,10 @@ public class SpongeContext implements Context {
      *         Synchronous executor service
      * @param game
      *         Sponge game object
+     * @param dataDirectory
+     *         Directory to keep plugin data in
+     * @param consoleChannel
+     *         The id of the console channel, from the channels.console_channel config option
      * @param remoteLinker
      *         use_remote_linking config option
      *
@@ -88,19 +133,26 @@ public class SpongeContext implements Context {
      *         Shouldn't happen, but inherited from {@link Constructor#newInstance(Object...)}.
      * @throws InstantiationException
      *         If instantiation of the type fails.
-     * @throws LoginException
-     *         If the provided token is invalid.
+     * @throws IOException
+     *         If the link store can't be opened.
      */
     @Configured
     public SpongeContext(final @Val("configuration") Configuration configuration,
                          final @Val("sync_executor") SpongeExecutorService syncExecutorService,
                          final @Val("async_executor") SpongeExecutorService asyncExecutorService,
-                         final @Val("game") Game game, final @Val("use_remote_linking") boolean remoteLinker)
+                         final @Val("game") Game game, final @Val("data_directory") Path dataDirectory,
+                         final @Val("console_channel") String consoleChannel,
+                         final @Val("use_remote_linking") boolean remoteLinker)
         throws ConfigurationException, IllegalAccessException, InvocationTargetException, InstantiationException,
-               LoginException {
+               IOException {
+        this.onlinePlayerRegistry = new OnlinePlayerRegistry();
+        this.userIndex = new DiscordUserIndex();
         this.playerUserLookup = new SpongePlayerUserLookup(this);
-        this.playerUserLinker = remoteLinker ? configuration.create(UplinkedPlayerUserLinker.class, playerUserLookup)
-            : configuration.create(LocalPlayerUserLinker.class, playerUserLookup);
+        this.linkStore = remoteLinker ? null : LinkStore.open(dataDirectory.resolve("links.dat"));
+        this.playerUserLinker = remoteLinker ? configuration.create(CachingPlayerUserLinker.class, this,
+            configuration.create(UplinkedPlayerUserLinker.class, playerUserLookup))
+            : new StoredPlayerUserLinker(configuration.create(LocalPlayerUserLinker.class, playerUserLookup), linkStore,
+                userIndex, onlinePlayerRegistry, asyncExecutorService);
         this.teamRoleLookup = new SpongeTeamRoleLookup(this);
         this.chatChannelLookup = new SpongeChatChannelLookup(this);
         this.configuration = configuration;
@@ -110,11 +162,50 @@ public class SpongeContext implements Context {
         this.chatChannelLinker = configuration
             .create(LocalChatChannelLinker.class, new DualLinkedHashBidiMap<>(), chatChannelLookup,
                 new SpongeConsole(this));
-        this.messageChannelChatLookup = new MessageChannelChatLookup();
+        this.messageFanOut = new MessageFanOut();
+        this.inboundBuffer = configuration.create(InboundMessageBuffer.class, messageFanOut);
+        this.messageChannelChatLookup = new MessageChannelChatLookup(inboundBuffer);
+        this.webhookSender = configuration.create(WebhookSender.class, asyncExecutorService);
+        this.relayMetrics = new RelayMetrics();
+        this.messageSender =
+            configuration.create(DiscordMessageSender.class, asyncExecutorService, webhookSender, relayMetrics);
+        this.routeCache = new RouteCache(messageChannelChatLookup, chatChannelLinker, relayMetrics);
+        this.relayDispatcher = configuration.create(RelayDispatcher.class, routeCache, messageSender, relayMetrics);
+        this.consoleLogStreamer = configuration.create(ConsoleLogStreamer.class, this, consoleChannel);
+        this.consoleCommandQueue = configuration.create(ConsoleCommandQueue.class, this, consoleChannel);
+        this.teamIndex = configuration.create(ScoreboardTeamIndex.class, this);
+        this.teamRoleSynchronizer = configuration.create(TeamRoleSynchronizer.class, this);
+        this.messageChannelChatLookup.addChangeListener(routeCache::invalidateAll);
         this.syncExecutor = syncExecutorService;
         this.asyncExecutor = asyncExecutorService;
+        this.metricsExporter = configuration.create(MetricsExporter.class, this, dataDirectory);
+        this.tracer = configuration.create(Tracer.class, dataDirectory);
         this.game = game;
-        this.jda = configuration.create(DSRVJDABuilder.class).build();
+    }
+
+    /**
+     * Logs in to Discord on the async executor. Once logged in, the JDA listeners are registered and the user and
+     * channel caches are filled before the returned future completes.
+     *
+     * @return future The future of the logged in JDA, completed exceptionally if the login failed.
+     */
+    public CompletableFuture<JDA> connect() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                JDA connected = configuration.create(DSRVJDABuilder.class).build();
+                connected.addEventListener(routeCache, userIndex, chatChannelLookup.getChannelListener(),
+                    teamRoleSynchronizer);
+                if (playerUserLinker instanceof CachingPlayerUserLinker) {
+                    connected.addEventListener(playerUserLinker);
+                }
+                userIndex.rebuild(connected);
+                chatChannelLookup.refreshChannels(connected);
+                jda = connected;
+                return connected;
+            } catch (Exception exception) {
+                throw new CompletionException(exception);
+            }
+        }, asyncExecutor);
     }
 
     /**
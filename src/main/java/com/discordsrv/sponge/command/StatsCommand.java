@@ -0,0 +1,88 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.command;
+
+import com.discordsrv.sponge.SpongeContext;
+import com.discordsrv.sponge.link.CachingPlayerUserLinker;
+import com.discordsrv.sponge.metrics.LatencyHistogram;
+import com.discordsrv.sponge.metrics.MetricsExporter;
+import com.discordsrv.sponge.metrics.RelayMetrics;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Stats command, for showing how the relay to Discord is keeping up.
+ */
+@ParametersAreNonnullByDefault
+public class StatsCommand implements CommandExecutor {
+
+    private final SpongeContext context;
+
+    /**
+     * Main constructor for the StatsCommand type.
+     *
+     * @param context
+     *         The context to read the metrics from
+     */
+    public StatsCommand(final SpongeContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Sends the relay metrics to the source.
+     *
+     * @param src
+     *         The source of the command
+     * @param args
+     *         The command arguments
+     *
+     * @return result The command result.
+     */
+    @Override
+    public CommandResult execute(final CommandSource src, final CommandContext args) {
+        RelayMetrics metrics = context.getRelayMetrics();
+        MetricsExporter exporter = context.getMetricsExporter();
+        src.sendMessage(Text.of("Relay queue: " + exporter.getQueueDepth() + " waiting, " + exporter.getDroppedCount()
+            + " dropped; route cache: " + context.getRouteCache().getHitCount() + " hits, "
+            + context.getRouteCache().getMissCount() + " misses; " + context.getMessageSender().getDroppedCount()
+            + " lines dropped by full channel backlogs"));
+        src.sendMessage(Text.of("Console commands: " + context.getConsoleCommandQueue().getQueueSize() + " waiting, "
+            + context.getConsoleCommandQueue().getDroppedCount() + " dropped"));
+        if (context.getPlayerUserLinker() instanceof CachingPlayerUserLinker) {
+            CachingPlayerUserLinker linkCache = (CachingPlayerUserLinker) context.getPlayerUserLinker();
+            long hits = linkCache.getHitCount();
+            long lookups = hits + linkCache.getMissCount();
+            src.sendMessage(Text.of(String.format("Link cache: %d hits, %d misses, %.1f%% hit rate", hits,
+                lookups - hits, lookups == 0 ? 0d : hits * 100d / lookups)));
+        }
+        for (RelayMetrics.Stage stage : RelayMetrics.Stage.values()) {
+            LatencyHistogram latencies = metrics.getLatencies(stage);
+            src.sendMessage(Text.of(
+                String.format("%s: %d, p50 %.1f ms, p99 %.1f ms, max %.1f ms, %d failed", stage.getLabel(),
+                    latencies.getCount(), latencies.getPercentileMicros(0.5) / 1000d,
+                    latencies.getPercentileMicros(0.99) / 1000d, latencies.getMaxMicros() / 1000d,
+                    metrics.getFailures(stage))));
+        }
+        return CommandResult.success();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.command;
+
+import com.discordsrv.sponge.relay.MessageFanOut;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Toggle command, for players to hide or show Discord messages.
+ */
+@ParametersAreNonnullByDefault
+public class ToggleCommand implements CommandExecutor {
+
+    private final MessageFanOut fanOut;
+
+    /**
+     * Main constructor for the ToggleCommand type.
+     *
+     * @param fanOut
+     *         The fan-out keeping track of who receives Discord messages
+     */
+    public ToggleCommand(final MessageFanOut fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Toggles whether the source sees Discord messages.
+     *
+     * @param src
+     *         The source of the command
+     * @param args
+     *         The command arguments
+     *
+     * @return result The command result.
+     *
+     * @throws CommandException
+     *         If the source is not a player.
+     */
+    @Override
+    public CommandResult execute(final CommandSource src, final CommandContext args) throws CommandException {
+        if (!(src instanceof Player)) {
+            throw new CommandException(Text.of("Only players can toggle Discord messages"));
+        }
+        Player player = (Player) src;
+        boolean optOut = !fanOut.isOptedOut(player);
+        fanOut.setOptedOut(player, optOut);
+        player.sendMessage(Text.of(optOut ? "Discord messages are now hidden" : "Discord messages are now shown"));
+        return CommandResult.success();
+    }
+}
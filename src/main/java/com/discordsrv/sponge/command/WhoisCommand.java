@@ -0,0 +1,163 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.command;
+
+import com.discordsrv.core.api.user.MinecraftPlayer;
+import com.discordsrv.sponge.SpongeContext;
+import com.discordsrv.sponge.lookup.SpongePlayerUserLookup;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.entities.User;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Whois command, for finding Discord users by id, name or nickname and the players they are linked to.
+ */
+@ParametersAreNonnullByDefault
+public class WhoisCommand implements CommandExecutor {
+
+    private static final int MAX_MATCHES = 10;
+
+    private final SpongeContext context;
+
+    /**
+     * Main constructor for the WhoisCommand type.
+     *
+     * @param context
+     *         The context to look users and links up in
+     */
+    public WhoisCommand(final SpongeContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Sends the Discord users matching the user argument to the source: the user with that id, or else those with
+     * that name or nickname, or else those whose name or nickname starts with it.
+     *
+     * @param src
+     *         The source of the command
+     * @param args
+     *         The command arguments
+     *
+     * @return result The command result.
+     *
+     * @throws CommandException
+     *         If no user was given.
+     */
+    @Override
+    public CommandResult execute(final CommandSource src, final CommandContext args) throws CommandException {
+        String query = args.<String>getOne("user")
+            .orElseThrow(() -> new CommandException(Text.of("Name the Discord user to look up")));
+        SpongePlayerUserLookup lookup = context.getPlayerUserLookup();
+        FutureCallback<Stream<User>> show = new Results(src, query);
+        try {
+            lookup.getUser(Long.parseLong(query), new FutureCallback<User>() {
+                @Override
+                public void onSuccess(@Nullable final User result) {
+                    show.onSuccess(result == null ? Stream.empty() : Stream.of(result));
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    show.onFailure(throwable);
+                }
+            });
+        } catch (NumberFormatException notAnId) {
+            lookup.getUsersByName(query, new FutureCallback<Stream<User>>() {
+                @Override
+                public void onSuccess(@Nullable final Stream<User> result) {
+                    List<User> users = result == null ? null : result.limit(MAX_MATCHES).collect(Collectors.toList());
+                    if (users == null || users.isEmpty()) {
+                        lookup.findUsers(query, MAX_MATCHES, show);
+                    } else {
+                        show.onSuccess(users.stream());
+                    }
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    show.onFailure(throwable);
+                }
+            });
+        }
+        return CommandResult.success();
+    }
+
+    /**
+     * Sends the users found to the source, each with the player it is linked to.
+     */
+    private final class Results implements FutureCallback<Stream<User>> {
+
+        private final CommandSource src;
+        private final String query;
+
+        private Results(final CommandSource src, final String query) {
+            this.src = src;
+            this.query = query;
+        }
+
+        @Override
+        public void onSuccess(@Nullable final Stream<User> result) {
+            List<User> users = result == null ? null : result.limit(MAX_MATCHES).collect(Collectors.toList());
+            if (users == null || users.isEmpty()) {
+                src.sendMessage(Text.of("No Discord user matches " + query));
+                return;
+            }
+            for (User user : users) {
+                String name = user.getName() + "#" + user.getDiscriminator() + " (" + user.getId() + ")";
+                context.getPlayerUserLinker().translate(user, new FutureCallback<MinecraftPlayer>() {
+                    @Override
+                    public void onSuccess(@Nullable final MinecraftPlayer player) {
+                        if (player == null) {
+                            send(name + ": not linked");
+                        } else {
+                            player.getName(playerName -> send(name + ": linked to " + playerName));
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(final Throwable throwable) {
+                        send(name + ": could not look up the link");
+                        throwable.printStackTrace();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+            send("Could not look up " + query);
+            throwable.printStackTrace();
+        }
+
+        private void send(final String message) {
+            // links may be resolved off the server thread
+            context.getSyncExecutor().execute(() -> src.sendMessage(Text.of(message)));
+        }
+    }
+}
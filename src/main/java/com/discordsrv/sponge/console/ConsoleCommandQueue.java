@@ -0,0 +1,219 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.console;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import com.discordsrv.sponge.SpongeContext;
+import com.discordsrv.sponge.relay.DiscordMessageSender;
+import com.discordsrv.sponge.text.TextRenderer;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.TextChannel;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConsoleCommandQueue type, for running console commands from Discord on the server thread within a time budget.
+ * <p>
+ * Commands may be offered from any thread. Once per tick, queued commands run until the budget is used up; at least one
+ * command runs per tick so a slow command can't hold back the rest forever. Whatever is left runs on later ticks. When
+ * the queue is full, new commands are dropped and counted.
+ * <p>
+ * The execution time of every command is reported back to the console channel, once per tick for all commands run. If
+ * the {@link ConsoleLogStreamer} is enabled the reports go through it, keeping them in order with the output of the
+ * commands; otherwise they are sent to the channel directly, with the command escaped so it can't mention anyone.
+ */
+@ParametersAreNonnullByDefault
+public class ConsoleCommandQueue {
+
+    private static final long TICK_MILLIS = 50;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Queue<String> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final StringBuilder reports = new StringBuilder();
+    private final SpongeContext context;
+    private final long maxNanosPerTick;
+    private final int capacity;
+    private final String channelId;
+    private @Nullable ScheduledFuture<?> task;
+
+    /**
+     * Configured constructor.
+     *
+     * @param context
+     *         The context to run commands in
+     * @param channelId
+     *         The id of the console channel
+     * @param maxMillisPerTick
+     *         max_millis_per_tick config option
+     * @param capacity
+     *         queue_capacity config option
+     */
+    @Configured
+    public ConsoleCommandQueue(final @Val("context") SpongeContext context,
+                               final @Val("console_channel") String channelId,
+                               final @Val("max_millis_per_tick") double maxMillisPerTick,
+                               final @Val("queue_capacity") int capacity) {
+        this.context = context;
+        this.maxNanosPerTick = Math.max(0, (long) (maxMillisPerTick * NANOS_PER_MILLI));
+        this.capacity = Math.max(1, capacity);
+        this.channelId = channelId;
+    }
+
+    /**
+     * Starts the per tick command task.
+     */
+    public synchronized void start() {
+        if (task == null) {
+            task = context.getSyncExecutor().scheduleAtFixedRate(this::run, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the per tick command task; commands still queued are discarded.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Queues a command to be run on the server thread. Never blocks.
+     *
+     * @param command
+     *         The command, without leading slash
+     *
+     * @return queued Whether the command was queued, false if the queue was full.
+     */
+    public boolean offer(final String command) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        commands.offer(command);
+        return true;
+    }
+
+    /**
+     * Fetches the amount of commands waiting to run.
+     *
+     * @return size The queue size.
+     */
+    public int getQueueSize() {
+        return size.get();
+    }
+
+    /**
+     * Fetches the amount of commands dropped because the queue was full.
+     *
+     * @return dropped The drop count.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        String command;
+        while ((command = commands.poll()) != null) {
+            size.decrementAndGet();
+            long commandStart = System.nanoTime();
+            try {
+                context.getGame().getCommandManager().process(context.getGame().getServer().getConsole(), command);
+                report(command, System.nanoTime() - commandStart, null);
+            } catch (Throwable throwable) {
+                report(command, System.nanoTime() - commandStart, throwable);
+            }
+            if (System.nanoTime() - start >= maxNanosPerTick) {
+                // out of budget, the rest waits for the next tick
+                break;
+            }
+        }
+        flushReports();
+    }
+
+    private void report(final String command, final long nanos, final @Nullable Throwable throwable) {
+        ConsoleLogStreamer streamer = context.getConsoleLogStreamer();
+        if (streamer.isEnabled()) {
+            // streamed inside a code block, where nothing is formatted and nobody is mentioned
+            streamer.offer(formatReport(command, nanos, throwable, false).toString());
+            return;
+        }
+        StringBuilder line = formatReport(command, nanos, throwable, true);
+        if (line.length() > DiscordMessageSender.MAX_MESSAGE_LENGTH) {
+            line.setLength(DiscordMessageSender.MAX_MESSAGE_LENGTH);
+        }
+        if (reports.length() + line.length() + 1 > DiscordMessageSender.MAX_MESSAGE_LENGTH) {
+            flushReports();
+        }
+        if (reports.length() > 0) {
+            reports.append('\n');
+        }
+        reports.append(line);
+    }
+
+    private static StringBuilder formatReport(final String command, final long nanos,
+                                              final @Nullable Throwable throwable, final boolean escape) {
+        StringBuilder line = new StringBuilder(command.length() + 48).append("Ran /");
+        // the command comes from Discord and may hold mentions or markdown, which must not ping or format the report
+        append(command, escape, line);
+        line.append(" in ").append(String.format("%.2f", nanos / NANOS_PER_MILLI)).append(" ms");
+        if (throwable != null) {
+            line.append(", failed with ");
+            append(throwable.toString(), escape, line);
+        }
+        return line;
+    }
+
+    private static void append(final String text, final boolean escape, final StringBuilder output) {
+        if (escape) {
+            TextRenderer.escape(text, output);
+        } else {
+            output.append(text);
+        }
+    }
+
+    private void flushReports() {
+        if (reports.length() == 0) {
+            return;
+        }
+        String message = reports.toString();
+        reports.setLength(0);
+        try {
+            JDA jda = context.getJda();
+            TextChannel channel = jda == null ? null : jda.getTextChannelById(channelId);
+            if (channel != null) {
+                channel.sendMessage(message).queue(null, Throwable::printStackTrace);
+            }
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.console;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * ConsoleLogAppender type, for copying server log output into a {@link LogRingBuffer}.
+ * <p>
+ * Log events from JDA are skipped, as sending the log to Discord would otherwise feed on its own output.
+ */
+@ParametersAreNonnullByDefault
+public class ConsoleLogAppender extends AbstractAppender {
+
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final String IGNORED_LOGGER_PREFIX = "net.dv8tion.jda";
+
+    private final LogRingBuffer buffer;
+
+    /**
+     * Main constructor for the ConsoleLogAppender type.
+     *
+     * @param buffer
+     *         The buffer to write log lines to
+     */
+    public ConsoleLogAppender(final LogRingBuffer buffer) {
+        super("DiscordSRV-Console", null, null, false);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Formats the event into a line and offers it to the buffer; never blocks.
+     *
+     * @param event
+     *         The log event
+     */
+    @Override
+    public void append(final LogEvent event) {
+        String loggerName = event.getLoggerName();
+        if (loggerName != null && loggerName.startsWith(IGNORED_LOGGER_PREFIX)) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(64).append('[');
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(event.getTimeMillis()), line);
+        line.append(' ').append(event.getLevel().name()).append("] ");
+        if (loggerName != null && !loggerName.isEmpty()) {
+            line.append('[').append(loggerName.substring(loggerName.lastIndexOf('.') + 1)).append("] ");
+        }
+        line.append(event.getMessage().getFormattedMessage());
+        buffer.offer(line.toString());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.console;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import com.discordsrv.sponge.SpongeContext;
+import com.discordsrv.sponge.relay.DiscordMessageSender;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ConsoleLogStreamer type, for streaming the server log to the console channel.
+ * <p>
+ * Log lines are collected in a {@link LogRingBuffer} and packed into code block messages at a fixed interval, one
+ * message in flight at a time. When Discord can't keep up the ring fills up and further lines are dropped, which is
+ * reported in the next message.
+ */
+@ParametersAreNonnullByDefault
+public class ConsoleLogStreamer {
+
+    private static final String BLOCK_START = "```\n";
+    private static final String BLOCK_END = "```";
+
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private final SpongeContext context;
+    private final boolean enabled;
+    private final String channelId;
+    private final long interval;
+    private final LogRingBuffer buffer;
+    private final ConsoleLogAppender appender;
+    private @Nullable ScheduledFuture<?> task;
+
+    /**
+     * Configured constructor.
+     *
+     * @param context
+     *         The context to send messages with
+     * @param channelId
+     *         The id of the console channel
+     * @param enabled
+     *         enabled config option
+     * @param interval
+     *         interval config option, in milliseconds
+     * @param bufferSize
+     *         buffer_size config option
+     */
+    @Configured
+    public ConsoleLogStreamer(final @Val("context") SpongeContext context,
+                              final @Val("console_channel") String channelId, final @Val("enabled") boolean enabled,
+                              final @Val("interval") long interval, final @Val("buffer_size") int bufferSize) {
+        this.context = context;
+        this.enabled = enabled;
+        this.channelId = channelId;
+        this.interval = Math.max(100, interval);
+        this.buffer = new LogRingBuffer(bufferSize);
+        this.appender = new ConsoleLogAppender(buffer);
+    }
+
+    /**
+     * Attaches the log appender and starts streaming, if enabled.
+     */
+    public synchronized void start() {
+        if (!enabled || task != null) {
+            return;
+        }
+        appender.start();
+        ((Logger) LogManager.getRootLogger()).addAppender(appender);
+        task = context.getAsyncExecutor().scheduleWithFixedDelay(this::drain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Detaches the log appender and stops streaming.
+     */
+    public synchronized void stop() {
+        if (task == null) {
+            return;
+        }
+        task.cancel(false);
+        task = null;
+        ((Logger) LogManager.getRootLogger()).removeAppender(appender);
+        appender.stop();
+    }
+
+    /**
+     * Checks whether lines offered are streamed to the console channel.
+     *
+     * @return enabled The enabled config option.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a line to be streamed, as if it had been logged.
+     *
+     * @param line
+     *         The line to stream
+     */
+    public void offer(final String line) {
+        if (enabled) {
+            buffer.offer(line);
+        }
+    }
+
+    private void drain() {
+        if (!inFlight.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            JDA jda = context.getJda();
+            TextChannel channel = jda == null ? null : jda.getTextChannelById(channelId);
+            String message = channel == null ? null : pack();
+            if (message == null) {
+                inFlight.set(false);
+                return;
+            }
+            channel.sendMessage(message).queue(sent -> acknowledge(), throwable -> acknowledge());
+        } catch (Throwable throwable) {
+            inFlight.set(false);
+            throwable.printStackTrace();
+        }
+    }
+
+    private void acknowledge() {
+        inFlight.set(false);
+        if (buffer.peek() != null) {
+            // more than one message worth of lines is waiting, don't wait for the next interval
+            context.getAsyncExecutor().execute(this::drain);
+        }
+    }
+
+    private @Nullable String pack() {
+        long dropped = buffer.takeDropped();
+        if (buffer.peek() == null && dropped == 0) {
+            return null;
+        }
+        StringBuilder message = new StringBuilder(DiscordMessageSender.MAX_MESSAGE_LENGTH);
+        if (dropped > 0) {
+            message.append('[').append(dropped).append(" log lines were dropped]\n");
+        }
+        if (buffer.peek() == null) {
+            return message.toString();
+        }
+        message.append(BLOCK_START);
+        int empty = message.length();
+        int limit = DiscordMessageSender.MAX_MESSAGE_LENGTH - BLOCK_END.length();
+        String line;
+        while ((line = buffer.peek()) != null) {
+            // keep lines from closing the code block
+            String escaped = line.replace(BLOCK_END, "`\u200B``");
+            int room = limit - message.length() - 1;
+            if (escaped.length() > room) {
+                if (message.length() > empty) {
+                    break;
+                }
+                escaped = escaped.substring(0, room);
+            }
+            buffer.poll();
+            message.append(escaped).append('\n');
+        }
+        return message.append(BLOCK_END).toString();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.console;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * LogRingBuffer type, a fixed size ring of log lines with many writers and a single reader.
+ * <p>
+ * All slots are allocated up front and writing never blocks or waits: when the ring is full the line is dropped and
+ * counted instead.
+ */
+@ParametersAreNonnullByDefault
+public class LogRingBuffer {
+
+    private final AtomicReferenceArray<String> slots;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final int mask;
+    private volatile long tail;
+
+    /**
+     * Main constructor for the LogRingBuffer type.
+     *
+     * @param capacity
+     *         The minimum amount of lines the ring can hold, rounded up to a power of two
+     */
+    public LogRingBuffer(final int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds a line to the ring. Safe to call from any thread, never blocks.
+     *
+     * @param line
+     *         The line to add
+     *
+     * @return added False if the ring was full and the line was dropped.
+     */
+    public boolean offer(final String line) {
+        while (true) {
+            long position = head.get();
+            if (position - tail > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (head.compareAndSet(position, position + 1)) {
+                slots.lazySet((int) position & mask, line);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Fetches the oldest line without removing it. Must only be called by the reader.
+     *
+     * @return line The oldest line, or null if there is none (yet).
+     */
+    public @Nullable String peek() {
+        return slots.get((int) tail & mask);
+    }
+
+    /**
+     * Removes the oldest line. Must only be called by the reader.
+     *
+     * @return line The oldest line, or null if there is none (yet).
+     */
+    public @Nullable String poll() {
+        int index = (int) tail & mask;
+        String line = slots.get(index);
+        if (line != null) {
+            slots.lazySet(index, null);
+            tail = tail + 1;
+        }
+        return line;
+    }
+
+    /**
+     * Fetches and resets the amount of lines dropped since the last call.
+     *
+     * @return dropped The drop count.
+     */
+    public long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import com.discordsrv.core.api.user.PlayerUserLinker;
+import com.google.common.util.concurrent.FutureCallback;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * PlayerUserLinker type, which can also translate many players or users at once.
+ */
+@ParametersAreNonnullByDefault
+public interface BulkPlayerUserLinker extends PlayerUserLinker {
+
+    /**
+     * Translates players to the ids of the users linked to them.
+     *
+     * @param uniqueIds
+     *         The unique ids of the players
+     * @param callback
+     *         The callback to invoke once with the snowflakes by unique id; players without a link are left out.
+     */
+    void translatePlayers(Collection<UUID> uniqueIds, FutureCallback<Map<UUID, Long>> callback);
+
+    /**
+     * Translates users to the unique ids of the players linked to them.
+     *
+     * @param snowflakes
+     *         The ids of the users
+     * @param callback
+     *         The callback to invoke once with the unique ids by snowflake; users without a link are left out.
+     */
+    void translateUsers(Collection<Long> snowflakes, FutureCallback<Map<Long, UUID>> callback);
+}
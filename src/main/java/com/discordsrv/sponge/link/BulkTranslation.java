@@ -0,0 +1,142 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import com.discordsrv.core.api.user.MinecraftPlayer;
+import com.discordsrv.core.api.user.PlayerUserLinker;
+import com.discordsrv.sponge.lookup.DiscordUserIndex;
+import com.discordsrv.sponge.lookup.OnlinePlayerRegistry;
+import com.discordsrv.sponge.unit.SpongeOfflinePlayer;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.entities.User;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completes bulk translations by translating the entries a {@link BulkPlayerUserLinker} could not answer itself one by
+ * one, concurrently.
+ */
+@ParametersAreNonnullByDefault
+final class BulkTranslation {
+
+    private BulkTranslation() {
+    }
+
+    /**
+     * Translates the missing players and invokes the callback once with everything found.
+     *
+     * @param linker
+     *         The linker to translate the missing players with
+     * @param players
+     *         The registry to find the missing players in
+     * @param found
+     *         The links found so far
+     * @param missing
+     *         The players still to translate
+     * @param callback
+     *         The callback to invoke with all links
+     */
+    static void translatePlayers(final PlayerUserLinker linker, final OnlinePlayerRegistry players,
+                                 final Map<UUID, Long> found, final List<UUID> missing,
+                                 final FutureCallback<Map<UUID, Long>> callback) {
+        if (missing.isEmpty()) {
+            callback.onSuccess(found);
+            return;
+        }
+        Map<UUID, Long> results = new ConcurrentHashMap<>(found);
+        AtomicInteger remaining = new AtomicInteger(missing.size());
+        for (UUID uniqueId : missing) {
+            MinecraftPlayer player = players.get(uniqueId);
+            linker.translate(player != null ? player : new SpongeOfflinePlayer(uniqueId, null),
+                new FutureCallback<User>() {
+                    @Override
+                    public void onSuccess(@Nullable final User result) {
+                        if (result != null) {
+                            results.put(uniqueId, result.getIdLong());
+                        }
+                        complete();
+                    }
+
+                    @Override
+                    public void onFailure(final Throwable throwable) {
+                        complete();
+                    }
+
+                    private void complete() {
+                        if (remaining.decrementAndGet() == 0) {
+                            callback.onSuccess(results);
+                        }
+                    }
+                });
+        }
+    }
+
+    /**
+     * Translates the missing users and invokes the callback once with everything found. Users which are not known to
+     * the Discord user index are left out.
+     *
+     * @param linker
+     *         The linker to translate the missing users with
+     * @param users
+     *         The index to find the missing users in
+     * @param found
+     *         The links found so far
+     * @param missing
+     *         The users still to translate
+     * @param callback
+     *         The callback to invoke with all links
+     */
+    static void translateUsers(final PlayerUserLinker linker, final DiscordUserIndex users, final Map<Long, UUID> found,
+                               final List<Long> missing, final FutureCallback<Map<Long, UUID>> callback) {
+        Map<Long, UUID> results = new ConcurrentHashMap<>(found);
+        AtomicInteger remaining = new AtomicInteger(missing.size() + 1);
+        Runnable complete = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                callback.onSuccess(results);
+            }
+        };
+        for (Long snowflake : missing) {
+            User user = users.getUser(snowflake);
+            if (user == null) {
+                complete.run();
+                continue;
+            }
+            linker.translate(user, new FutureCallback<MinecraftPlayer>() {
+                @Override
+                public void onSuccess(@Nullable final MinecraftPlayer result) {
+                    if (result != null) {
+                        result.getUniqueIdentifier(uniqueId -> results.put(snowflake, uniqueId));
+                    }
+                    complete.run();
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    complete.run();
+                }
+            });
+        }
+        complete.run();
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import com.discordsrv.core.api.user.MinecraftPlayer;
+import com.discordsrv.core.api.user.PlayerUserLinker;
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import com.discordsrv.sponge.SpongeContext;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * PlayerUserLinker implementation, caching the results of a remote linker near the server.
+ * <p>
+ * Links are cached for {@code ttl} seconds and unlinked results for {@code negative_ttl} seconds, up to {@code
+ * maximum_size} entries each. Once an entry is half way through its lifetime it is still answered from the cache while
+ * it is reloaded in the background, so a cached link never waits for the remote. Concurrent lookups of the same key
+ * share one request. Everything cached is forgotten after a reconnect, as links may have changed meanwhile.
+ */
+@ParametersAreNonnullByDefault
+public class CachingPlayerUserLinker extends ListenerAdapter implements BulkPlayerUserLinker {
+
+    private final SpongeContext context;
+    private final PlayerUserLinker linker;
+    private final long refreshNanos;
+    private final long negativeRefreshNanos;
+    private final Cache<UUID, Entry<User>> users;
+    private final Cache<UUID, Entry<User>> unlinkedPlayers;
+    private final Cache<Long, Entry<MinecraftPlayer>> players;
+    private final Cache<Long, Entry<MinecraftPlayer>> unlinkedUsers;
+    private final Map<UUID, CompletableFuture<User>> usersInFlight = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<MinecraftPlayer>> playersInFlight = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Configured constructor.
+     *
+     * @param context
+     *         The context to find players and users in for bulk translations
+     * @param linker
+     *         The remote linker to cache
+     * @param ttl
+     *         ttl config option, in seconds
+     * @param negativeTtl
+     *         negative_ttl config option, in seconds
+     * @param maximumSize
+     *         maximum_size config option
+     */
+    @Configured
+    public CachingPlayerUserLinker(final @Val("context") SpongeContext context,
+                                   final @Val("linker") PlayerUserLinker linker, final @Val("ttl") long ttl,
+                                   final @Val("negative_ttl") long negativeTtl,
+                                   final @Val("maximum_size") long maximumSize) {
+        this.context = context;
+        this.linker = linker;
+        this.refreshNanos = TimeUnit.SECONDS.toNanos(ttl) / 2;
+        this.negativeRefreshNanos = TimeUnit.SECONDS.toNanos(negativeTtl) / 2;
+        this.users = CacheBuilder.newBuilder().expireAfterWrite(ttl, TimeUnit.SECONDS).maximumSize(maximumSize).build();
+        this.unlinkedPlayers =
+            CacheBuilder.newBuilder().expireAfterWrite(negativeTtl, TimeUnit.SECONDS).maximumSize(maximumSize).build();
+        this.players = CacheBuilder.newBuilder().expireAfterWrite(ttl, TimeUnit.SECONDS).maximumSize(maximumSize).build();
+        this.unlinkedUsers =
+            CacheBuilder.newBuilder().expireAfterWrite(negativeTtl, TimeUnit.SECONDS).maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Translates a player to the user linked to them.
+     *
+     * @param player
+     *         The player to translate
+     * @param callback
+     *         The callback to invoke with the user, or null if not linked
+     */
+    @Override
+    public void translate(final MinecraftPlayer player, final FutureCallback<User> callback) {
+        player.getUniqueIdentifier(uniqueId -> lookup(users, unlinkedPlayers, usersInFlight, uniqueId,
+            internal -> linker.translate(player, internal), callback));
+    }
+
+    /**
+     * Translates a user to the player linked to them.
+     *
+     * @param user
+     *         The user to translate
+     * @param callback
+     *         The callback to invoke with the player, or null if not linked
+     */
+    @Override
+    public void translate(final User user, final FutureCallback<MinecraftPlayer> callback) {
+        lookup(players, unlinkedUsers, playersInFlight, user.getIdLong(), internal -> linker.translate(user, internal),
+            callback);
+    }
+
+    /**
+     * Translates players from the cache; players which are not cached are requested concurrently, sharing requests
+     * already in flight, as the remote has no bulk request.
+     *
+     * @param uniqueIds
+     *         The unique ids of the players
+     * @param callback
+     *         The callback to invoke once with the snowflakes by unique id
+     */
+    @Override
+    public void translatePlayers(final Collection<UUID> uniqueIds, final FutureCallback<Map<UUID, Long>> callback) {
+        Map<UUID, Long> found = new HashMap<>(uniqueIds.size() * 2);
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uniqueId : uniqueIds) {
+            Entry<User> entry = users.getIfPresent(uniqueId);
+            if (entry != null && entry.value != null) {
+                found.put(uniqueId, entry.value.getIdLong());
+            } else if (unlinkedPlayers.getIfPresent(uniqueId) == null) {
+                missing.add(uniqueId);
+            }
+        }
+        hits.add(uniqueIds.size() - missing.size());
+        BulkTranslation.translatePlayers(this, context.getOnlinePlayerRegistry(), found, missing, callback);
+    }
+
+    /**
+     * Translates users from the cache; users which are not cached are requested concurrently, sharing requests already
+     * in flight, as the remote has no bulk request.
+     *
+     * @param snowflakes
+     *         The ids of the users
+     * @param callback
+     *         The callback to invoke once with the unique ids by snowflake
+     */
+    @Override
+    public void translateUsers(final Collection<Long> snowflakes, final FutureCallback<Map<Long, UUID>> callback) {
+        Map<Long, UUID> found = new HashMap<>(snowflakes.size() * 2);
+        List<Long> missing = new ArrayList<>();
+        for (Long snowflake : snowflakes) {
+            Entry<MinecraftPlayer> entry = players.getIfPresent(snowflake);
+            if (entry != null && entry.value != null) {
+                entry.value.getUniqueIdentifier(uniqueId -> found.put(snowflake, uniqueId));
+            } else if (unlinkedUsers.getIfPresent(snowflake) == null) {
+                missing.add(snowflake);
+            }
+        }
+        hits.add(snowflakes.size() - missing.size());
+        BulkTranslation.translateUsers(this, context.getUserIndex(), found, missing, callback);
+    }
+
+    /**
+     * Forgets every cached link.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        users.invalidateAll();
+        unlinkedPlayers.invalidateAll();
+        players.invalidateAll();
+        unlinkedUsers.invalidateAll();
+    }
+
+    /**
+     * Forgets every cached link after a reconnect, as the remote may have linked or unlinked players meanwhile.
+     *
+     * @param event
+     *         ReconnectedEvent
+     */
+    @Override
+    public void onReconnect(final ReconnectedEvent event) {
+        invalidateAll();
+    }
+
+    /**
+     * Fetches the amount of lookups answered from the cache.
+     *
+     * @return hits The hit count.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Fetches the amount of lookups that had to wait for the remote linker.
+     *
+     * @return misses The miss count.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private <K, V> void lookup(final Cache<K, Entry<V>> linked, final Cache<K, Entry<V>> unlinked,
+                               final Map<K, CompletableFuture<V>> inFlight, final K key,
+                               final Consumer<FutureCallback<V>> loader, final FutureCallback<V> callback) {
+        Entry<V> entry = linked.getIfPresent(key);
+        long refresh = refreshNanos;
+        if (entry == null) {
+            entry = unlinked.getIfPresent(key);
+            refresh = negativeRefreshNanos;
+        }
+        if (entry != null) {
+            hits.increment();
+            if (System.nanoTime() - entry.loadedAt > refresh) {
+                load(linked, unlinked, inFlight, key, loader);
+            }
+            callback.onSuccess(entry.value);
+            return;
+        }
+        misses.increment();
+        load(linked, unlinked, inFlight, key, loader).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                callback.onFailure(throwable);
+            } else {
+                callback.onSuccess(result);
+            }
+        });
+    }
+
+    private <K, V> CompletableFuture<V> load(final Cache<K, Entry<V>> linked, final Cache<K, Entry<V>> unlinked,
+                                             final Map<K, CompletableFuture<V>> inFlight, final K key,
+                                             final Consumer<FutureCallback<V>> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        final long expected = generation.get();
+        try {
+            loader.accept(new FutureCallback<V>() {
+                @Override
+                public void onSuccess(@Nullable final V result) {
+                    // an invalidation while loading may have made the result stale
+                    if (generation.get() == expected) {
+                        if (result != null) {
+                            linked.put(key, new Entry<>(result));
+                            unlinked.invalidate(key);
+                        } else {
+                            unlinked.put(key, new Entry<>(null));
+                            linked.invalidate(key);
+                        }
+                    }
+                    inFlight.remove(key, future);
+                    future.complete(result);
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    inFlight.remove(key, future);
+                    future.completeExceptionally(throwable);
+                }
+            });
+        } catch (Throwable throwable) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(throwable);
+        }
+        return future;
+    }
+
+    private static final class Entry<V> {
+
+        private final @Nullable V value;
+        private final long loadedAt = System.nanoTime();
+
+        private Entry(final @Nullable V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * LinkIndex type, for mapping player unique ids to Discord user ids and back without boxing.
+ * <p>
+ * Two open addressing tables with linear probing over primitive arrays: one keyed by the two halves of the unique id,
+ * one keyed by the snowflake. The nil unique id and snowflake 0 mark empty slots, so neither can be linked. Writers
+ * lock; readers use optimistic reads, so {@link #getSnowflake(long, long)} never locks or allocates.
+ */
+@ParametersAreNonnullByDefault
+public class LinkIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private int size;
+
+    /**
+     * Main constructor for the LinkIndex type.
+     *
+     * @param expectedSize
+     *         The amount of links to size the tables for.
+     */
+    public LinkIndex(final int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * Fetches the snowflake linked to a unique id.
+     *
+     * @param most
+     *         The most significant bits of the unique id
+     * @param least
+     *         The least significant bits of the unique id
+     *
+     * @return snowflake The linked snowflake, or 0 if not linked.
+     */
+    public long getSnowflake(final long most, final long least) {
+        long stamp = lock.tryOptimisticRead();
+        long snowflake = table.getSnowflake(most, least);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                snowflake = table.getSnowflake(most, least);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return snowflake;
+    }
+
+    /**
+     * Fetches the unique id linked to a snowflake.
+     *
+     * @param snowflake
+     *         The snowflake
+     *
+     * @return uniqueId The linked unique id, or null if not linked.
+     */
+    public @Nullable UUID getUniqueId(final long snowflake) {
+        long stamp = lock.tryOptimisticRead();
+        Table current = table;
+        int slot = current.findReverse(snowflake);
+        long most = slot < 0 ? 0 : current.reverseMost[slot];
+        long least = slot < 0 ? 0 : current.reverseLeast[slot];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                current = table;
+                slot = current.findReverse(snowflake);
+                most = slot < 0 ? 0 : current.reverseMost[slot];
+                least = slot < 0 ? 0 : current.reverseLeast[slot];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return slot < 0 ? null : new UUID(most, least);
+    }
+
+    /**
+     * Links a unique id to a snowflake, replacing any link either of them had.
+     *
+     * @param most
+     *         The most significant bits of the unique id
+     * @param least
+     *         The least significant bits of the unique id
+     * @param snowflake
+     *         The snowflake
+     */
+    public void put(final long most, final long least, final long snowflake) {
+        if ((most == 0 && least == 0) || snowflake == 0) {
+            throw new IllegalArgumentException("The nil unique id and snowflake 0 can't be linked");
+        }
+        long stamp = lock.writeLock();
+        try {
+            removeUnlocked(most, least);
+            int slot = table.findReverse(snowflake);
+            if (slot >= 0) {
+                removeUnlocked(table.reverseMost[slot], table.reverseLeast[slot]);
+            }
+            if ((size + 1) * 2 > table.capacity()) {
+                resize(table.capacity() * 2);
+            }
+            table.insert(most, least, snowflake);
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the link of a unique id.
+     *
+     * @param most
+     *         The most significant bits of the unique id
+     * @param least
+     *         The least significant bits of the unique id
+     *
+     * @return snowflake The snowflake which was linked, or 0 if not linked.
+     */
+    public long remove(final long most, final long least) {
+        long stamp = lock.writeLock();
+        try {
+            return removeUnlocked(most, least);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Fetches the amount of links.
+     *
+     * @return size The amount of links.
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Invokes the consumer for every link, while holding off writers.
+     *
+     * @param consumer
+     *         The consumer to invoke.
+     */
+    public void forEach(final LinkConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            for (int slot = 0; slot < current.capacity(); slot++) {
+                if (current.snowflakes[slot] != 0) {
+                    consumer.accept(current.most[slot], current.least[slot], current.snowflakes[slot]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long removeUnlocked(final long most, final long least) {
+        int slot = table.findForward(most, least);
+        if (slot < 0) {
+            return 0;
+        }
+        long snowflake = table.snowflakes[slot];
+        table.deleteForward(slot);
+        table.deleteReverse(table.findReverse(snowflake));
+        size--;
+        return snowflake;
+    }
+
+    private void resize(final int capacity) {
+        Table previous = table;
+        Table resized = new Table(capacity);
+        for (int slot = 0; slot < previous.capacity(); slot++) {
+            if (previous.snowflakes[slot] != 0) {
+                resized.insert(previous.most[slot], previous.least[slot], previous.snowflakes[slot]);
+            }
+        }
+        table = resized;
+    }
+
+    private static int capacityFor(final int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(final long value) {
+        long mixed = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        mixed = (mixed ^ (mixed >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (mixed ^ (mixed >>> 33));
+    }
+
+    /**
+     * Consumer of a link.
+     */
+    @FunctionalInterface
+    public interface LinkConsumer {
+
+        /**
+         * Accepts a link.
+         *
+         * @param most
+         *         The most significant bits of the unique id
+         * @param least
+         *         The least significant bits of the unique id
+         * @param snowflake
+         *         The snowflake
+         */
+        void accept(long most, long least, long snowflake);
+    }
+
+    /**
+     * The two tables; a forward slot is empty when its snowflake is 0, a reverse slot when its key is 0.
+     */
+    private static final class Table {
+
+        private final long[] most;
+        private final long[] least;
+        private final long[] snowflakes;
+        private final long[] reverseKeys;
+        private final long[] reverseMost;
+        private final long[] reverseLeast;
+        private final int mask;
+
+        private Table(final int capacity) {
+            this.most = new long[capacity];
+            this.least = new long[capacity];
+            this.snowflakes = new long[capacity];
+            this.reverseKeys = new long[capacity];
+            this.reverseMost = new long[capacity];
+            this.reverseLeast = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private long getSnowflake(final long mostBits, final long leastBits) {
+            int slot = findForward(mostBits, leastBits);
+            return slot < 0 ? 0 : snowflakes[slot];
+        }
+
+        private int findForward(final long mostBits, final long leastBits) {
+            for (int slot = mix(mostBits ^ leastBits) & mask; snowflakes[slot] != 0; slot = (slot + 1) & mask) {
+                if (most[slot] == mostBits && least[slot] == leastBits) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int findReverse(final long snowflake) {
+            for (int slot = mix(snowflake) & mask; reverseKeys[slot] != 0; slot = (slot + 1) & mask) {
+                if (reverseKeys[slot] == snowflake) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(final long mostBits, final long leastBits, final long snowflake) {
+            int slot = mix(mostBits ^ leastBits) & mask;
+            while (snowflakes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            most[slot] = mostBits;
+            least[slot] = leastBits;
+            snowflakes[slot] = snowflake;
+            slot = mix(snowflake) & mask;
+            while (reverseKeys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            reverseKeys[slot] = snowflake;
+            reverseMost[slot] = mostBits;
+            reverseLeast[slot] = leastBits;
+        }
+
+        /**
+         * Deletes by shifting later entries of the probe sequence back, so no tombstones are needed.
+         */
+        private void deleteForward(int hole) {
+            for (int slot = (hole + 1) & mask; snowflakes[slot] != 0; slot = (slot + 1) & mask) {
+                int home = mix(most[slot] ^ least[slot]) & mask;
+                if (movable(hole, slot, home)) {
+                    most[hole] = most[slot];
+                    least[hole] = least[slot];
+                    snowflakes[hole] = snowflakes[slot];
+                    hole = slot;
+                }
+            }
+            most[hole] = 0;
+            least[hole] = 0;
+            snowflakes[hole] = 0;
+        }
+
+        private void deleteReverse(int hole) {
+            for (int slot = (hole + 1) & mask; reverseKeys[slot] != 0; slot = (slot + 1) & mask) {
+                int home = mix(reverseKeys[slot]) & mask;
+                if (movable(hole, slot, home)) {
+                    reverseKeys[hole] = reverseKeys[slot];
+                    reverseMost[hole] = reverseMost[slot];
+                    reverseLeast[hole] = reverseLeast[slot];
+                    hole = slot;
+                }
+            }
+            reverseKeys[hole] = 0;
+            reverseMost[hole] = 0;
+            reverseLeast[hole] = 0;
+        }
+
+        /**
+         * Whether the entry at slot, which hashes to home, may move back into the hole; it may not when its home lies
+         * cyclically after the hole.
+         */
+        private static boolean movable(final int hole, final int slot, final int home) {
+            return hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot);
+        }
+    }
+}
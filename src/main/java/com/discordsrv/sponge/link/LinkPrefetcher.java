@@ -0,0 +1,76 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import com.discordsrv.sponge.SpongeContext;
+import com.google.common.util.concurrent.FutureCallback;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * LinkPrefetcher type, for resolving the link of a player while they log in, so it is cached once they chat.
+ * <p>
+ * With local linking a player without a stored link is asked from the core linker and written to the link store, and
+ * a stored link is refreshed in the background; with remote linking the link is loaded into the cache.
+ */
+@ParametersAreNonnullByDefault
+public class LinkPrefetcher {
+
+    private static final FutureCallback<Map<UUID, Long>> IGNORE = new FutureCallback<Map<UUID, Long>>() {
+        @Override
+        public void onSuccess(@Nullable final Map<UUID, Long> result) {
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+        }
+    };
+
+    private final SpongeContext context;
+
+    /**
+     * Main constructor for the LinkPrefetcher type.
+     *
+     * @param context
+     *         The context to prefetch links with
+     */
+    public LinkPrefetcher(final SpongeContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Prefetches the link of an authenticated player; runs off the server thread.
+     *
+     * @param event
+     *         ClientConnectionEvent.Auth
+     */
+    @Listener(order = Order.POST)
+    public void onAuth(ClientConnectionEvent.Auth event) {
+        if (event.isCancelled()) {
+            return;
+        }
+        context.getPlayerUserLinker().translatePlayers(Collections.singleton(event.getProfile().getUniqueId()), IGNORE);
+    }
+}
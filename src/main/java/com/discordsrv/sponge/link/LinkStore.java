@@ -0,0 +1,259 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import lombok.Getter;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * LinkStore type, for persisting account links in an append-only, memory mapped log.
+ * <p>
+ * The log is a header followed by fixed size records of the unique id halves, the snowflake (0 for an unlink) and a
+ * CRC32 of those. Opening replays the log into a {@link LinkIndex}, stopping at the first record whose checksum does
+ * not match, which is where a crash interrupted a write; the rest of the log is cleared and the next append takes its
+ * place. Once the log holds more than twice the live links it is compacted into a new file, which atomically replaces
+ * the old one.
+ */
+@ParametersAreNonnullByDefault
+public class LinkStore implements Closeable {
+
+    private static final int MAGIC = 0x44534c4b;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+    private static final int PAYLOAD_SIZE = 24;
+    private static final int MIN_MAPPED_SIZE = 64 * 1024;
+    private static final int COMPACTION_SLACK = 4096;
+
+    private final Path file;
+    @Getter private final LinkIndex index;
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private ByteBuffer view;
+    private int position;
+    private int records;
+    private int compactionThreshold;
+
+    private LinkStore(final Path file, final LinkIndex index) {
+        this.file = file;
+        this.index = index;
+    }
+
+    /**
+     * Opens a link store, creating the file if it does not exist, and replays it.
+     *
+     * @param file
+     *         The file of the log
+     *
+     * @return store The opened store.
+     *
+     * @throws IOException
+     *         If the file can't be read or written, or isn't a link store.
+     */
+    public static LinkStore open(final Path file) throws IOException {
+        long size = Files.exists(file) ? Files.size(file) : 0;
+        if (size >= HEADER_SIZE) {
+            // checked before mapping, which would grow a file that isn't ours
+            ByteBuffer header = ByteBuffer.allocate(8);
+            try (FileChannel headerChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (header.hasRemaining() && headerChannel.read(header, header.position()) >= 0) {
+                    continue;
+                }
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a link store");
+            }
+        }
+        LinkStore store = new LinkStore(file, new LinkIndex((int) Math.max(0, (size - HEADER_SIZE) / RECORD_SIZE)));
+        store.map(Math.max(size, MIN_MAPPED_SIZE));
+        if (size < HEADER_SIZE) {
+            store.buffer.putInt(0, MAGIC);
+            store.buffer.putInt(4, VERSION);
+            store.position = HEADER_SIZE;
+        } else {
+            store.replay();
+        }
+        store.compactionThreshold = store.index.size() * 2 + COMPACTION_SLACK;
+        if (store.records > store.compactionThreshold) {
+            store.compact();
+        }
+        return store;
+    }
+
+    /**
+     * Links a unique id to a snowflake, replacing any link either of them had.
+     *
+     * @param uniqueId
+     *         The unique id
+     * @param snowflake
+     *         The snowflake
+     *
+     * @throws IOException
+     *         If the log can't be grown or compacted; the link is kept in memory regardless.
+     */
+    public synchronized void link(final UUID uniqueId, final long snowflake) throws IOException {
+        long most = uniqueId.getMostSignificantBits();
+        long least = uniqueId.getLeastSignificantBits();
+        if (index.getSnowflake(most, least) == snowflake) {
+            return;
+        }
+        index.put(most, least, snowflake);
+        append(most, least, snowflake);
+    }
+
+    /**
+     * Removes the link of a unique id.
+     *
+     * @param uniqueId
+     *         The unique id
+     *
+     * @throws IOException
+     *         If the log can't be grown or compacted; the link is removed from memory regardless.
+     */
+    public synchronized void unlink(final UUID uniqueId) throws IOException {
+        long most = uniqueId.getMostSignificantBits();
+        long least = uniqueId.getLeastSignificantBits();
+        if (index.remove(most, least) != 0) {
+            append(most, least, 0);
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live links.
+     *
+     * @throws IOException
+     *         If the new log can't be written or moved in place.
+     */
+    public synchronized void compact() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer output = ByteBuffer.allocate(HEADER_SIZE + index.size() * RECORD_SIZE);
+        output.putInt(MAGIC).putInt(VERSION).putLong(0);
+        index.forEach((most, least, snowflake) -> {
+            int start = output.position();
+            output.putLong(most).putLong(least).putLong(snowflake);
+            crc.reset();
+            crc.update(output.array(), start, PAYLOAD_SIZE);
+            output.putInt((int) crc.getValue()).putInt(0);
+        });
+        output.flip();
+        try (FileChannel temporaryChannel = FileChannel
+            .open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (output.hasRemaining()) {
+                temporaryChannel.write(output);
+            }
+            temporaryChannel.force(true);
+        }
+        int live = output.limit();
+        buffer.force();
+        channel.close();
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            // the old mapping stays valid until collected, which some platforms refuse to replace; keep appending
+            Files.deleteIfExists(temporary);
+            map(buffer.capacity());
+            throw exception;
+        }
+        map(Math.max((long) live * 2, MIN_MAPPED_SIZE));
+        position = live;
+        records = (live - HEADER_SIZE) / RECORD_SIZE;
+        compactionThreshold = records * 2 + COMPACTION_SLACK;
+    }
+
+    /**
+     * Writes the mapped log to the disk and closes the file.
+     *
+     * @throws IOException
+     *         If the file can't be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void replay() {
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_SIZE <= buffer.capacity() && checksum(offset) == buffer.getInt(offset + PAYLOAD_SIZE)) {
+            long most = buffer.getLong(offset);
+            long least = buffer.getLong(offset + 8);
+            long snowflake = buffer.getLong(offset + 16);
+            if (snowflake == 0) {
+                index.remove(most, least);
+            } else if (most != 0 || least != 0) {
+                index.put(most, least, snowflake);
+            }
+            offset += RECORD_SIZE;
+            records++;
+        }
+        position = offset;
+        // a crash can leave whole records after the torn one, which must not replay once appends fill the gap
+        for (int tail = offset; tail < buffer.capacity(); tail++) {
+            if (buffer.get(tail) != 0) {
+                buffer.put(tail, (byte) 0);
+            }
+        }
+    }
+
+    private void append(final long most, final long least, final long snowflake) throws IOException {
+        if (position + RECORD_SIZE > buffer.capacity()) {
+            buffer.force();
+            map((long) buffer.capacity() * 2);
+        }
+        buffer.putLong(position, most);
+        buffer.putLong(position + 8, least);
+        buffer.putLong(position + 16, snowflake);
+        buffer.putInt(position + PAYLOAD_SIZE, checksum(position));
+        buffer.putInt(position + PAYLOAD_SIZE + 4, 0);
+        position += RECORD_SIZE;
+        records++;
+        if (records > compactionThreshold) {
+            // retried after more appends if this compaction fails
+            compactionThreshold = records + COMPACTION_SLACK;
+            compact();
+        }
+    }
+
+    private int checksum(final int offset) {
+        view.clear().position(offset).limit(offset + PAYLOAD_SIZE);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private void map(final long size) throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        view = buffer.duplicate();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import com.discordsrv.core.api.user.MinecraftPlayer;
+import com.discordsrv.core.api.user.PlayerUserLinker;
+import com.discordsrv.sponge.lookup.DiscordUserIndex;
+import com.discordsrv.sponge.lookup.OnlinePlayerRegistry;
+import com.discordsrv.sponge.unit.SpongeMinecraftPlayer;
+import com.discordsrv.sponge.unit.SpongeOfflinePlayer;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.entities.User;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * PlayerUserLinker implementation, answering from a {@link LinkStore} kept in step with the linker it wraps.
+ * <p>
+ * Links found in the store's index are answered right away, without waiting for the wrapped linker; the wrapped linker
+ * is then asked in the background, and its answer is written back to the store, so links removed or replaced through
+ * the core are removed or replaced in the store by the next lookup. A link only found through the wrapped linker is
+ * written to the store once found. Concurrent refreshes of the same player or user share one request.
+ */
+@ParametersAreNonnullByDefault
+public class StoredPlayerUserLinker implements BulkPlayerUserLinker {
+
+    private final PlayerUserLinker linker;
+    private final LinkStore store;
+    private final DiscordUserIndex userIndex;
+    private final OnlinePlayerRegistry playerRegistry;
+    private final Executor executor;
+    private final Set<UUID> refreshingPlayers = ConcurrentHashMap.newKeySet();
+    private final Set<Long> refreshingUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Main constructor for the StoredPlayerUserLinker type.
+     *
+     * @param linker
+     *         The linker holding the links
+     * @param store
+     *         The store to answer from
+     * @param userIndex
+     *         The index to find users in
+     * @param playerRegistry
+     *         The registry to find online players in
+     * @param executor
+     *         The executor to refresh stored links on
+     */
+    public StoredPlayerUserLinker(final PlayerUserLinker linker, final LinkStore store,
+                                  final DiscordUserIndex userIndex, final OnlinePlayerRegistry playerRegistry,
+                                  final Executor executor) {
+        this.linker = linker;
+        this.store = store;
+        this.userIndex = userIndex;
+        this.playerRegistry = playerRegistry;
+        this.executor = executor;
+    }
+
+    /**
+     * Translates a player to the user linked to them.
+     *
+     * @param player
+     *         The player to translate
+     * @param callback
+     *         The callback to invoke with the user
+     */
+    @Override
+    public void translate(final MinecraftPlayer player, final FutureCallback<User> callback) {
+        player.getUniqueIdentifier(uniqueId -> {
+            User stored = getStoredUser(uniqueId);
+            if (stored == null) {
+                linker.translate(player, new PlayerRefresh(uniqueId, callback));
+                return;
+            }
+            callback.onSuccess(stored);
+            refresh(player, uniqueId);
+        });
+    }
+
+    /**
+     * Translates a user to the player linked to them.
+     *
+     * @param user
+     *         The user to translate
+     * @param callback
+     *         The callback to invoke with the player
+     */
+    @Override
+    public void translate(final User user, final FutureCallback<MinecraftPlayer> callback) {
+        UUID stored = store.getIndex().getUniqueId(user.getIdLong());
+        if (stored == null) {
+            linker.translate(user, new UserRefresh(user.getIdLong(), callback));
+            return;
+        }
+        SpongeMinecraftPlayer online = playerRegistry.get(stored);
+        callback.onSuccess(online != null ? online : new SpongeOfflinePlayer(stored, null));
+        refresh(user);
+    }
+
+    /**
+     * Translates players from the store's index in one pass; only players without a stored link are asked from the
+     * wrapped linker, concurrently. Stored links are refreshed in the background as for single lookups.
+     *
+     * @param uniqueIds
+     *         The unique ids of the players
+     * @param callback
+     *         The callback to invoke once with the snowflakes by unique id
+     */
+    @Override
+    public void translatePlayers(final Collection<UUID> uniqueIds, final FutureCallback<Map<UUID, Long>> callback) {
+        LinkIndex index = store.getIndex();
+        Map<UUID, Long> found = new HashMap<>(uniqueIds.size() * 2);
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uniqueId : uniqueIds) {
+            long snowflake = index.getSnowflake(uniqueId.getMostSignificantBits(), uniqueId.getLeastSignificantBits());
+            if (snowflake == 0) {
+                missing.add(uniqueId);
+                continue;
+            }
+            found.put(uniqueId, snowflake);
+            SpongeMinecraftPlayer online = playerRegistry.get(uniqueId);
+            refresh(online != null ? online : new SpongeOfflinePlayer(uniqueId, null), uniqueId);
+        }
+        BulkTranslation.translatePlayers(this, playerRegistry, found, missing, callback);
+    }
+
+    /**
+     * Translates users from the store's index in one pass; only users without a stored link are asked from the wrapped
+     * linker, concurrently. Stored links are refreshed in the background as for single lookups.
+     *
+     * @param snowflakes
+     *         The ids of the users
+     * @param callback
+     *         The callback to invoke once with the unique ids by snowflake
+     */
+    @Override
+    public void translateUsers(final Collection<Long> snowflakes, final FutureCallback<Map<Long, UUID>> callback) {
+        LinkIndex index = store.getIndex();
+        Map<Long, UUID> found = new HashMap<>(snowflakes.size() * 2);
+        List<Long> missing = new ArrayList<>();
+        for (Long snowflake : snowflakes) {
+            UUID uniqueId = index.getUniqueId(snowflake);
+            if (uniqueId == null) {
+                missing.add(snowflake);
+                continue;
+            }
+            found.put(snowflake, uniqueId);
+            User user = userIndex.getUser(snowflake);
+            if (user != null) {
+                refresh(user);
+            }
+        }
+        BulkTranslation.translateUsers(this, userIndex, found, missing, callback);
+    }
+
+    private @Nullable User getStoredUser(final UUID uniqueId) {
+        long snowflake =
+            store.getIndex().getSnowflake(uniqueId.getMostSignificantBits(), uniqueId.getLeastSignificantBits());
+        // a link to a user the bot can't see is asked from the wrapped linker instead
+        return snowflake == 0 ? null : userIndex.getUser(snowflake);
+    }
+
+    private void refresh(final MinecraftPlayer player, final UUID uniqueId) {
+        if (refreshingPlayers.add(uniqueId)) {
+            executor.execute(() -> linker.translate(player, new PlayerRefresh(uniqueId, null)));
+        }
+    }
+
+    private void refresh(final User user) {
+        if (refreshingUsers.add(user.getIdLong())) {
+            executor.execute(() -> linker.translate(user, new UserRefresh(user.getIdLong(), null)));
+        }
+    }
+
+    private void record(final UUID uniqueId, final long snowflake) {
+        try {
+            store.link(uniqueId, snowflake);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private void unlink(final UUID uniqueId) {
+        try {
+            store.unlink(uniqueId);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the wrapped linker's answer for a player to the store, then passes it on if anyone is waiting for it.
+     */
+    private final class PlayerRefresh implements FutureCallback<User> {
+
+        private final UUID uniqueId;
+        private final @Nullable FutureCallback<User> callback;
+
+        private PlayerRefresh(final UUID uniqueId, final @Nullable FutureCallback<User> callback) {
+            this.uniqueId = uniqueId;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onSuccess(@Nullable final User result) {
+            refreshingPlayers.remove(uniqueId);
+            if (result != null) {
+                record(uniqueId, result.getIdLong());
+            } else {
+                unlink(uniqueId);
+            }
+            if (callback != null) {
+                callback.onSuccess(result);
+            }
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+            // the stored link, if any, stays until the wrapped linker answers
+            refreshingPlayers.remove(uniqueId);
+            if (callback != null) {
+                callback.onFailure(throwable);
+            }
+        }
+    }
+
+    /**
+     * Writes the wrapped linker's answer for a user to the store, then passes it on if anyone is waiting for it.
+     */
+    private final class UserRefresh implements FutureCallback<MinecraftPlayer> {
+
+        private final long snowflake;
+        private final @Nullable FutureCallback<MinecraftPlayer> callback;
+
+        private UserRefresh(final long snowflake, final @Nullable FutureCallback<MinecraftPlayer> callback) {
+            this.snowflake = snowflake;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onSuccess(@Nullable final MinecraftPlayer result) {
+            refreshingUsers.remove(snowflake);
+            if (result != null) {
+                result.getUniqueIdentifier(uniqueId -> record(uniqueId, snowflake));
+            } else {
+                UUID stored = store.getIndex().getUniqueId(snowflake);
+                if (stored != null) {
+                    unlink(stored);
+                }
+            }
+            if (callback != null) {
+                callback.onSuccess(result);
+            }
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+            refreshingUsers.remove(snowflake);
+            if (callback != null) {
+                callback.onFailure(throwable);
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.discordsrv.sponge.listener;
 import com.discordsrv.core.conf.annotation.Configured;
 import com.discordsrv.core.conf.annotation.Val;
 import com.discordsrv.sponge.DSRVSponge;
+import com.discordsrv.sponge.relay.RelayMessage;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
@@ -59,6 +60,6 @@ public class AchievementMessageListener {
      */
     @Listener(order = Order.POST)
     public void onAchievement(GrantAchievementEvent.TargetPlayer event, @Root Player player) {
-        plugin.sendMessage(event, player);
+        plugin.sendMessage(event, RelayMessage.Kind.ACHIEVEMENT, player);
     }
 }
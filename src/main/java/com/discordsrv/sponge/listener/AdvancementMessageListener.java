@@ -20,6 +20,7 @@ package com.discordsrv.sponge.listener;
 import com.discordsrv.core.conf.annotation.Configured;
 import com.discordsrv.core.conf.annotation.Val;
 import com.discordsrv.sponge.DSRVSponge;
+import com.discordsrv.sponge.relay.RelayMessage;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
 import org.spongepowered.api.event.advancement.AdvancementEvent;
@@ -55,6 +56,6 @@ public class AdvancementMessageListener {
      */
     @Listener(order = Order.POST)
     public void onAdvancement(AdvancementEvent.Grant event) {
-        plugin.sendMessage(event, event.getTargetEntity());
+        plugin.sendMessage(event, RelayMessage.Kind.ADVANCEMENT, event.getTargetEntity());
     }
 }
@@ -21,20 +21,35 @@ package com.discordsrv.sponge.listener;
 import com.discordsrv.core.conf.annotation.Configured;
 import com.discordsrv.core.conf.annotation.Val;
 import com.discordsrv.sponge.DSRVSponge;
+import com.discordsrv.sponge.relay.RelayMessage;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
 import org.spongepowered.api.event.message.MessageChannelEvent;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Generic channel message listener.
+ * <p>
+ * Whether an event type is relayed is decided once per concrete event class. In whitelist mode, if every configured
+ * entry names a loadable event type, listeners are registered for those types only instead of for every
+ * MessageChannelEvent, leaving out types whose supertype is also listed.
  */
 public class ChannelMessageListener {
 
     private final DSRVSponge plugin;
     private final boolean blacklist;
     private final List<String> events;
+    private final ClassValue<Boolean> relayed = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            String name = type.getName();
+            return events.stream().anyMatch(name::startsWith) != blacklist;
+        }
+    };
 
     /**
      * Configured constructor.
@@ -53,9 +68,15 @@ public class ChannelMessageListener {
                                   final @Val("events") List<String> events, final @Val("enabled") boolean enabled) {
         this.plugin = plugin;
         this.blacklist = blacklist;
-        this.events = events;
-        if (enabled) {
+        this.events = new ArrayList<>(events);
+        if (!enabled) {
+            return;
+        }
+        List<Class<? extends MessageChannelEvent>> eventTypes = blacklist ? null : resolveEventTypes(events);
+        if (eventTypes == null) {
             plugin.getContext().getGame().getEventManager().registerListeners(plugin, this);
+        } else {
+            eventTypes.forEach(this::registerListener);
         }
     }
 
@@ -67,9 +88,46 @@ public class ChannelMessageListener {
      */
     @Listener(order = Order.POST)
     public void onMessage(MessageChannelEvent event) {
-        if (events.stream().anyMatch(eventClass -> event.getClass().getName().startsWith(eventClass)) == blacklist) {
+        if (!isRelayed(event.getClass())) {
             return;
         }
-        plugin.sendMessage(event, null);
+        plugin.sendMessage(event, RelayMessage.Kind.GENERIC, null);
+    }
+
+    /**
+     * Checks whether events of a class are relayed, according to the blacklist or whitelist.
+     *
+     * @param eventType
+     *         The concrete event class
+     *
+     * @return relayed Whether the events are relayed.
+     */
+    public boolean isRelayed(final Class<?> eventType) {
+        return relayed.get(eventType);
+    }
+
+    private <T extends MessageChannelEvent> void registerListener(final Class<T> eventType) {
+        plugin.getContext().getGame().getEventManager()
+            .registerListener(plugin, eventType, Order.POST, this::onMessage);
+    }
+
+    private static @Nullable List<Class<? extends MessageChannelEvent>> resolveEventTypes(final List<String> events) {
+        List<Class<? extends MessageChannelEvent>> eventTypes = new ArrayList<>(events.size());
+        for (String event : events) {
+            try {
+                Class<?> type = Class.forName(event, false, ChannelMessageListener.class.getClassLoader());
+                if (!MessageChannelEvent.class.isAssignableFrom(type)) {
+                    return null;
+                }
+                eventTypes.add(type.asSubclass(MessageChannelEvent.class));
+            } catch (ClassNotFoundException | LinkageError ignored) {
+                // a package prefix or unknown class, can only be matched against every event
+                return null;
+            }
+        }
+        // Sponge calls a listener for every registered supertype of an event, which would relay it more than once
+        eventTypes.removeIf(type -> eventTypes.stream()
+            .anyMatch(other -> other != type && other.isAssignableFrom(type)));
+        return eventTypes.stream().distinct().collect(Collectors.toList());
     }
 }
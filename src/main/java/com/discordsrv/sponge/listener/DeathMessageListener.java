@@ -20,6 +20,7 @@ package com.discordsrv.sponge.listener;
 import com.discordsrv.core.conf.annotation.Configured;
 import com.discordsrv.core.conf.annotation.Val;
 import com.discordsrv.sponge.DSRVSponge;
+import com.discordsrv.sponge.relay.RelayMessage;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
@@ -55,7 +56,7 @@ public class DeathMessageListener {
     @Listener(order = Order.POST)
     public void onDeath(DestructEntityEvent.Death event) {
         if (event.getTargetEntity() instanceof Player) {
-            plugin.sendMessage(event, (Player) event.getTargetEntity());
+            plugin.sendMessage(event, RelayMessage.Kind.DEATH, (Player) event.getTargetEntity());
         }
     }
 }
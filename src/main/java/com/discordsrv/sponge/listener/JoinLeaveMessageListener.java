@@ -21,6 +21,7 @@ package com.discordsrv.sponge.listener;
 import com.discordsrv.core.conf.annotation.Configured;
 import com.discordsrv.core.conf.annotation.Val;
 import com.discordsrv.sponge.DSRVSponge;
+import com.discordsrv.sponge.relay.RelayMessage;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
 import org.spongepowered.api.event.network.ClientConnectionEvent;
@@ -67,7 +68,7 @@ public class JoinLeaveMessageListener {
         if (!joinEnabled) {
             return;
         }
-        plugin.sendMessage(event, event.getTargetEntity());
+        plugin.sendMessage(event, RelayMessage.Kind.JOIN, event.getTargetEntity());
     }
 
     /**
@@ -81,6 +82,6 @@ public class JoinLeaveMessageListener {
         if (!leaveEnabled) {
             return;
         }
-        plugin.sendMessage(event, event.getTargetEntity());
+        plugin.sendMessage(event, RelayMessage.Kind.LEAVE, event.getTargetEntity());
     }
 }
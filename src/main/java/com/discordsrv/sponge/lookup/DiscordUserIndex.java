@@ -0,0 +1,238 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.lookup;
+
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberLeaveEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberNickChangeEvent;
+import net.dv8tion.jda.core.events.user.update.UserUpdateNameEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * DiscordUserIndex type, for looking up Discord users without scanning every cached user.
+ * <p>
+ * Users are indexed by id, and by lower-cased name and guild nicknames in a sorted map, so exact lookups are O(1) and
+ * name lookups O(log n), including by prefix. The index is built on ready and then kept up to date from member join,
+ * leave, nickname and name change events.
+ */
+@ParametersAreNonnullByDefault
+public class DiscordUserIndex extends ListenerAdapter {
+
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> userKeys = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Set<Long>> byName = new ConcurrentSkipListMap<>();
+
+    /**
+     * Fetches a user by id.
+     *
+     * @param id
+     *         The id of the user
+     *
+     * @return user The user, or null if not known.
+     */
+    public @Nullable User getUser(final long id) {
+        return users.get(id);
+    }
+
+    /**
+     * Fetches the users with the given name or nickname, ignoring case.
+     *
+     * @param name
+     *         The name to look for
+     *
+     * @return users The matching users.
+     */
+    public List<User> getUsersByName(final String name) {
+        return resolve(byName.getOrDefault(normalize(name), Collections.emptySet()), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Fetches users whose name or nickname starts with the given prefix, ignoring case.
+     *
+     * @param prefix
+     *         The prefix to look for
+     * @param limit
+     *         The maximum amount of users to return
+     *
+     * @return users The matching users, ordered by the name they matched on.
+     */
+    public List<User> findUsersByPrefix(final String prefix, final int limit) {
+        String key = normalize(prefix);
+        // the sub map is sorted by name, so keep the users in the order they were first matched
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Set<Long> matches : byName.subMap(key, true, key + Character.MAX_VALUE, true).values()) {
+            ids.addAll(matches);
+            if (ids.size() >= limit) {
+                break;
+            }
+        }
+        return resolve(ids, limit);
+    }
+
+    /**
+     * Fetches all indexed users.
+     *
+     * @return users An unmodifiable live view of the indexed users.
+     */
+    public Collection<User> getUsers() {
+        return Collections.unmodifiableCollection(users.values());
+    }
+
+    /**
+     * Rebuilds the index from all guilds of the JDA instance.
+     *
+     * @param jda
+     *         The JDA instance
+     */
+    public synchronized void rebuild(final JDA jda) {
+        users.clear();
+        userKeys.clear();
+        byName.clear();
+        for (Guild guild : jda.getGuilds()) {
+            for (Member member : guild.getMembers()) {
+                if (!users.containsKey(member.getUser().getIdLong())) {
+                    index(member.getUser());
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the index once JDA is ready.
+     *
+     * @param event
+     *         ReadyEvent
+     */
+    @Override
+    public void onReady(final ReadyEvent event) {
+        rebuild(event.getJDA());
+    }
+
+    /**
+     * Indexes a member that joined.
+     *
+     * @param event
+     *         GuildMemberJoinEvent
+     */
+    @Override
+    public void onGuildMemberJoin(final GuildMemberJoinEvent event) {
+        index(event.getUser());
+    }
+
+    /**
+     * Re-indexes or removes a member that left.
+     *
+     * @param event
+     *         GuildMemberLeaveEvent
+     */
+    @Override
+    public void onGuildMemberLeave(final GuildMemberLeaveEvent event) {
+        index(event.getUser());
+    }
+
+    /**
+     * Re-indexes a member whose nickname changed.
+     *
+     * @param event
+     *         GuildMemberNickChangeEvent
+     */
+    @Override
+    public void onGuildMemberNickChange(final GuildMemberNickChangeEvent event) {
+        index(event.getUser());
+    }
+
+    /**
+     * Re-indexes a user whose name changed.
+     *
+     * @param event
+     *         UserUpdateNameEvent
+     */
+    @Override
+    public void onUserUpdateName(final UserUpdateNameEvent event) {
+        index(event.getUser());
+    }
+
+    private synchronized void index(final User user) {
+        long id = user.getIdLong();
+        List<Guild> guilds = user.getMutualGuilds();
+        Set<String> keys = new HashSet<>();
+        if (!guilds.isEmpty()) {
+            keys.add(normalize(user.getName()));
+            for (Guild guild : guilds) {
+                Member member = guild.getMember(user);
+                if (member != null && member.getNickname() != null) {
+                    keys.add(normalize(member.getNickname()));
+                }
+            }
+        }
+        Set<String> previous = keys.isEmpty() ? userKeys.remove(id) : userKeys.put(id, keys);
+        if (previous != null) {
+            for (String key : previous) {
+                if (!keys.contains(key)) {
+                    byName.computeIfPresent(key, (name, ids) -> ids.remove(id) && ids.isEmpty() ? null : ids);
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            users.remove(id);
+            return;
+        }
+        users.put(id, user);
+        for (String key : keys) {
+            byName.computeIfAbsent(key, name -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private List<User> resolve(final Collection<Long> ids, final int limit) {
+        List<User> result = new ArrayList<>(Math.min(ids.size(), limit));
+        for (Long id : ids) {
+            User user = users.get(id);
+            if (user != null) {
+                result.add(user);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String normalize(final String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
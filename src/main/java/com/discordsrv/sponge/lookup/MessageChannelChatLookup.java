@@ -19,12 +19,18 @@ package com.discordsrv.sponge.lookup;
 
 import com.discordsrv.core.api.common.callback.MultiCallbackWrapper;
 import com.discordsrv.core.api.common.functional.Translator;
+import com.discordsrv.sponge.relay.InboundMessageBuffer;
+import com.discordsrv.sponge.trace.Trace;
 import com.discordsrv.sponge.unit.chat.SpongeChat;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.FutureCallback;
 import org.spongepowered.api.text.channel.MessageChannel;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -38,6 +44,20 @@ import java.util.stream.Collectors;
 public class MessageChannelChatLookup {
 
     private final Set<Translator<MessageChannel, SpongeChat>> chatTranslators = new CopyOnWriteArraySet<>();
+    private final Set<Runnable> changeListeners = new CopyOnWriteArraySet<>();
+    private final Map<String, SpongeChat> knownChats = new ConcurrentHashMap<>();
+    private final InboundMessageBuffer inboundBuffer;
+    private volatile ImmutableList<SpongeChat> knownChatsSnapshot = ImmutableList.of();
+
+    /**
+     * Main constructor for the MessageChannelChatLookup type.
+     *
+     * @param inboundBuffer
+     *         The buffer that chats found by this lookup deliver their messages through
+     */
+    public MessageChannelChatLookup(final InboundMessageBuffer inboundBuffer) {
+        this.inboundBuffer = inboundBuffer;
+    }
 
     /**
      * Looks up the {@link SpongeChat} for the {@link MessageChannel}.
@@ -48,15 +68,66 @@ public class MessageChannelChatLookup {
      *         Lookup result callback
      */
     public void lookup(final MessageChannel messageChannel, final FutureCallback<SpongeChat> callback) {
+        lookup(messageChannel, null, callback);
+    }
+
+    /**
+     * Looks up the {@link SpongeChat} for the {@link MessageChannel}, recording which translator answered in a trace.
+     *
+     * @param messageChannel
+     *         The message channel used for the lookup
+     * @param trace
+     *         The trace of the message being routed, if it was sampled
+     * @param callback
+     *         Lookup result callback
+     */
+    public void lookup(final MessageChannel messageChannel, final @Nullable Trace trace,
+                       final FutureCallback<SpongeChat> callback) {
+        FutureCallback<SpongeChat> binding = new FutureCallback<SpongeChat>() {
+            @Override
+            public void onSuccess(@Nullable final SpongeChat result) {
+                if (result != null) {
+                    result.setInboundBuffer(inboundBuffer);
+                    addKnownChat(result);
+                }
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                callback.onFailure(throwable);
+            }
+        };
         try {
             new MultiCallbackWrapper<>(chatTranslators.stream().map(
                 translator -> (Consumer<FutureCallback<SpongeChat>>) internal -> translator
-                    .translate(messageChannel, internal)).collect(Collectors.toList()), callback).run();
+                    .translate(messageChannel, trace == null ? internal : traced(translator, trace, internal)))
+                .collect(Collectors.toList()), binding).run();
         } catch (Throwable throwable) {
             callback.onFailure(throwable);
         }
     }
 
+    private static FutureCallback<SpongeChat> traced(final Translator<MessageChannel, SpongeChat> translator,
+                                                     final Trace trace, final FutureCallback<SpongeChat> callback) {
+        return new FutureCallback<SpongeChat>() {
+            @Override
+            public void onSuccess(@Nullable final SpongeChat result) {
+                if (result != null) {
+                    result.getUniqueIdentifier(
+                        identifier -> trace.span("lookup", translator.getClass().getName() + " answered " + identifier));
+                }
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                trace.span("lookup", translator.getClass().getName() + " failed: " + throwable);
+                callback.onFailure(throwable);
+            }
+        };
+    }
+
     /**
      * Adds a translator to this lookup.
      *
@@ -64,6 +135,56 @@ public class MessageChannelChatLookup {
      *         The translator to invoke for getting a SpongeChat object.
      */
     public void addTranslator(Translator<MessageChannel, SpongeChat> translator) {
-        this.chatTranslators.add(translator);
+        if (this.chatTranslators.add(translator)) {
+            rebuildKnownChats();
+            changeListeners.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Adds a translator to this lookup, along with the chats it is known to produce.
+     *
+     * @param translator
+     *         The translator to invoke for getting a SpongeChat object.
+     * @param chats
+     *         The chats the translator produces, listed by {@link #getKnownChats()} before first being looked up.
+     */
+    public void addTranslator(Translator<MessageChannel, SpongeChat> translator, SpongeChat... chats) {
+        for (SpongeChat chat : chats) {
+            chat.setInboundBuffer(inboundBuffer);
+            chat.getUniqueIdentifier(identifier -> knownChats.putIfAbsent(identifier, chat));
+        }
+        addTranslator(translator);
+    }
+
+    /**
+     * Fetches the chats registered with, or found by, this lookup.
+     *
+     * @return knownChats An immutable snapshot of the known chats.
+     */
+    public ImmutableList<SpongeChat> getKnownChats() {
+        return knownChatsSnapshot;
+    }
+
+    private void addKnownChat(SpongeChat chat) {
+        chat.getUniqueIdentifier(identifier -> {
+            if (knownChats.putIfAbsent(identifier, chat) == null) {
+                rebuildKnownChats();
+            }
+        });
+    }
+
+    private synchronized void rebuildKnownChats() {
+        knownChatsSnapshot = ImmutableList.copyOf(knownChats.values());
+    }
+
+    /**
+     * Adds a listener to be invoked whenever the set of translators changes.
+     *
+     * @param listener
+     *         The listener to invoke.
+     */
+    public void addChangeListener(Runnable listener) {
+        this.changeListeners.add(listener);
     }
 }
@@ -0,0 +1,117 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.lookup;
+
+import com.discordsrv.sponge.unit.SpongeMinecraftPlayer;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * OnlinePlayerRegistry type, for reading the online players from any thread.
+ * <p>
+ * Kept up to date by join and disconnect events on the server thread, which publish a new immutable snapshot each
+ * time; readers never lock and never touch the server. Every session has exactly one {@link SpongeMinecraftPlayer}.
+ */
+@ParametersAreNonnullByDefault
+public class OnlinePlayerRegistry {
+
+    private static final SpongeMinecraftPlayer[] EMPTY = new SpongeMinecraftPlayer[0];
+
+    private final Map<UUID, SpongeMinecraftPlayer> players = new ConcurrentHashMap<>();
+    private volatile SpongeMinecraftPlayer[] snapshot = EMPTY;
+
+    /**
+     * Fetches an online player by unique id.
+     *
+     * @param uniqueId
+     *         The unique id of the player
+     *
+     * @return player The player, or null if not online.
+     */
+    public @Nullable SpongeMinecraftPlayer get(final UUID uniqueId) {
+        return players.get(uniqueId);
+    }
+
+    /**
+     * Fetches the current snapshot of online players.
+     *
+     * @return players An immutable list of the online players.
+     */
+    public List<SpongeMinecraftPlayer> getPlayers() {
+        return Arrays.asList(snapshot.clone());
+    }
+
+    /**
+     * Streams the current snapshot of online players.
+     *
+     * @return players A stream of the online players.
+     */
+    public Stream<SpongeMinecraftPlayer> stream() {
+        return Arrays.stream(snapshot);
+    }
+
+    /**
+     * Fetches the amount of online players.
+     *
+     * @return size The amount of online players.
+     */
+    public int size() {
+        return snapshot.length;
+    }
+
+    /**
+     * ClientConnectionEvent.Join listener.
+     *
+     * @param event
+     *         ClientConnectionEvent.Join
+     */
+    @Listener(order = Order.FIRST)
+    public synchronized void onJoin(ClientConnectionEvent.Join event) {
+        Player player = event.getTargetEntity();
+        players.put(player.getUniqueId(), new SpongeMinecraftPlayer(player));
+        publish();
+    }
+
+    /**
+     * ClientConnectionEvent.Disconnect listener.
+     *
+     * @param event
+     *         ClientConnectionEvent.Disconnect
+     */
+    @Listener(order = Order.LAST)
+    public synchronized void onDisconnect(ClientConnectionEvent.Disconnect event) {
+        if (players.remove(event.getTargetEntity().getUniqueId()) != null) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        snapshot = players.values().toArray(EMPTY);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.lookup;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import com.discordsrv.sponge.SpongeContext;
+import com.discordsrv.sponge.unit.SpongeTeam;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+import org.spongepowered.api.scoreboard.Scoreboard;
+import org.spongepowered.api.scoreboard.Team;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ScoreboardTeamIndex type, for knowing the scoreboard teams of all worlds without walking the scoreboards per query.
+ * <p>
+ * Sponge has no scoreboard change events, so the scoreboards are checked on the server thread at an interval and when
+ * players join. A check only computes a fingerprint of team names and members; the immutable snapshot of
+ * {@link SpongeTeam}s is rebuilt only when the fingerprint changed, and can be read from any thread.
+ */
+@ParametersAreNonnullByDefault
+public class ScoreboardTeamIndex {
+
+    private final SpongeContext context;
+    private final long refreshInterval;
+    private final Set<Runnable> changeListeners = new CopyOnWriteArraySet<>();
+    private volatile ImmutableList<SpongeTeam> teams = ImmutableList.of();
+    private long fingerprint;
+    private @Nullable ScheduledFuture<?> task;
+
+    /**
+     * Configured constructor.
+     *
+     * @param context
+     *         The context to read the scoreboards from
+     * @param refreshInterval
+     *         refresh_interval config option, in milliseconds
+     */
+    @Configured
+    public ScoreboardTeamIndex(final @Val("context") SpongeContext context,
+                               final @Val("refresh_interval") long refreshInterval) {
+        this.context = context;
+        this.refreshInterval = Math.max(50, refreshInterval);
+    }
+
+    /**
+     * Starts checking the scoreboards for changes.
+     */
+    public synchronized void start() {
+        if (task == null) {
+            task = context.getSyncExecutor()
+                .scheduleAtFixedRate(this::refresh, 0, refreshInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops checking the scoreboards for changes.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Fetches the current snapshot of teams; safe to call from any thread.
+     *
+     * @return teams The known teams.
+     */
+    public ImmutableList<SpongeTeam> getTeams() {
+        return teams;
+    }
+
+    /**
+     * Adds a listener to be invoked on the server thread whenever a new snapshot is published.
+     *
+     * @param listener
+     *         The listener to invoke.
+     */
+    public void addChangeListener(Runnable listener) {
+        this.changeListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addChangeListener(Runnable)}.
+     *
+     * @param listener
+     *         The listener to remove
+     */
+    public void removeChangeListener(Runnable listener) {
+        this.changeListeners.remove(listener);
+    }
+
+    /**
+     * Checks the scoreboards for changes once a player joined, as they may bring their own scoreboard.
+     *
+     * @param event
+     *         ClientConnectionEvent.Join
+     */
+    @Listener(order = Order.POST)
+    public void onJoin(ClientConnectionEvent.Join event) {
+        refresh();
+    }
+
+    /**
+     * Checks the scoreboards for changes and rebuilds the snapshot if there are any. Must run on the server thread.
+     */
+    public void refresh() {
+        Set<Scoreboard> scoreboards = Collections.newSetFromMap(new IdentityHashMap<>());
+        context.getGame().getServer().getServerScoreboard().ifPresent(scoreboards::add);
+        for (Player player : context.getGame().getServer().getOnlinePlayers()) {
+            scoreboards.add(player.getScoreboard());
+        }
+        long current = 1;
+        for (Scoreboard scoreboard : scoreboards) {
+            for (Team team : scoreboard.getTeams()) {
+                // order independent, teams and members come from hash sets
+                long teamHash = team.getName().hashCode();
+                for (Text member : team.getMembers()) {
+                    teamHash += 31L * member.hashCode();
+                }
+                current += teamHash * 0x9E3779B97F4A7C15L + team.getMembers().size();
+            }
+        }
+        if (current == fingerprint) {
+            return;
+        }
+        fingerprint = current;
+        Map<String, ImmutableSet.Builder<String>> members = new TreeMap<>();
+        for (Scoreboard scoreboard : scoreboards) {
+            for (Team team : scoreboard.getTeams()) {
+                ImmutableSet.Builder<String> names = members.computeIfAbsent(team.getName(), name -> ImmutableSet.builder());
+                team.getMembers().forEach(member -> names.add(member.toPlain()));
+            }
+        }
+        ImmutableList.Builder<SpongeTeam> builder = ImmutableList.builder();
+        members.forEach((name, names) -> builder.add(new SpongeTeam(name, names.build(), context.getOnlinePlayerRegistry())));
+        teams = builder.build();
+        changeListeners.forEach(Runnable::run);
+    }
+}
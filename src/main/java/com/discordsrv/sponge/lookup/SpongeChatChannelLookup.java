@@ -20,18 +20,33 @@ package com.discordsrv.sponge.lookup;
 import com.discordsrv.core.api.channel.Chat;
 import com.discordsrv.core.channel.MalleableChatChannelLookup;
 import com.discordsrv.sponge.SpongeContext;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Channel;
+import net.dv8tion.jda.core.events.ReadyEvent;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
+import net.dv8tion.jda.core.events.channel.text.TextChannelCreateEvent;
+import net.dv8tion.jda.core.events.channel.text.TextChannelDeleteEvent;
+import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.core.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.stream.Stream;
 
 /**
  * MalleableChatChannelLookup implementation, for DiscordSRV-Sponge.
+ * <p>
+ * Known chats and channels are served from immutable snapshots; the channel snapshot is rebuilt by the
+ * {@link #getChannelListener() channel listener} on the JDA events which change the set of text channels.
  */
 @ParametersAreNonnullByDefault
 public class SpongeChatChannelLookup extends MalleableChatChannelLookup<SpongeContext> {
 
+    private final ListenerAdapter channelListener = new ChannelListener();
+    private volatile ImmutableList<Channel> knownChannels = ImmutableList.of();
+
     /**
      * Main constructor for the MalleableChatChannelLookup type.
      *
@@ -50,7 +65,11 @@ public class SpongeChatChannelLookup extends MalleableChatChannelLookup<SpongeCo
      */
     @Override
     public void getKnownChats(FutureCallback<Stream<Chat>> callback) {
-        // TODO
+        try {
+            callback.onSuccess(getContext().getMessageChannelChatLookup().getKnownChats().stream().map(chat -> chat));
+        } catch (Throwable throwable) {
+            callback.onFailure(throwable);
+        }
     }
 
     /**
@@ -61,6 +80,65 @@ public class SpongeChatChannelLookup extends MalleableChatChannelLookup<SpongeCo
      */
     @Override
     public void getKnownChannels(FutureCallback<Stream<Channel>> callback) {
-        // TODO
+        try {
+            callback.onSuccess(knownChannels.stream());
+        } catch (Throwable throwable) {
+            callback.onFailure(throwable);
+        }
+    }
+
+    /**
+     * Rebuilds the channel snapshot from the text channels JDA can currently see.
+     *
+     * @param jda
+     *         The JDA instance to read the text channels from.
+     */
+    public void refreshChannels(JDA jda) {
+        knownChannels = ImmutableList.copyOf(jda.getTextChannels());
+    }
+
+    /**
+     * Fetches the JDA listener which rebuilds the channel snapshot when the set of text channels changes.
+     *
+     * @return listener The listener, to register with JDA.
+     */
+    public ListenerAdapter getChannelListener() {
+        return channelListener;
+    }
+
+    /**
+     * Rebuilds the channel snapshot on the JDA events which change the set of text channels.
+     */
+    private final class ChannelListener extends ListenerAdapter {
+
+        @Override
+        public void onReady(final ReadyEvent event) {
+            refreshChannels(event.getJDA());
+        }
+
+        @Override
+        public void onReconnect(final ReconnectedEvent event) {
+            refreshChannels(event.getJDA());
+        }
+
+        @Override
+        public void onGuildJoin(final GuildJoinEvent event) {
+            refreshChannels(event.getJDA());
+        }
+
+        @Override
+        public void onGuildLeave(final GuildLeaveEvent event) {
+            refreshChannels(event.getJDA());
+        }
+
+        @Override
+        public void onTextChannelCreate(final TextChannelCreateEvent event) {
+            refreshChannels(event.getJDA());
+        }
+
+        @Override
+        public void onTextChannelDelete(final TextChannelDeleteEvent event) {
+            refreshChannels(event.getJDA());
+        }
     }
 }
@@ -20,7 +20,6 @@ package com.discordsrv.sponge.lookup;
 import com.discordsrv.core.api.user.MinecraftPlayer;
 import com.discordsrv.core.user.MalleablePlayerUserLookup;
 import com.discordsrv.sponge.SpongeContext;
-import com.discordsrv.sponge.unit.SpongeMinecraftPlayer;
 import com.google.common.util.concurrent.FutureCallback;
 import net.dv8tion.jda.core.entities.User;
 
@@ -44,7 +43,7 @@ public class SpongePlayerUserLookup extends MalleablePlayerUserLookup<SpongeCont
     }
 
     /**
-     * Fetches all online Minecraft players.
+     * Fetches all online Minecraft players, from the {@link OnlinePlayerRegistry}; safe to call from any thread.
      *
      * @param callback
      *         The callback to invoke when users have been collected.
@@ -52,15 +51,14 @@ public class SpongePlayerUserLookup extends MalleablePlayerUserLookup<SpongeCont
     @Override
     public void getOnlinePlayers(FutureCallback<Stream<MinecraftPlayer>> callback) {
         try {
-            callback.onSuccess(
-                getContext().getGame().getServer().getOnlinePlayers().stream().map(SpongeMinecraftPlayer::new));
+            callback.onSuccess(getContext().getOnlinePlayerRegistry().stream().map(MinecraftPlayer.class::cast));
         } catch (Throwable throwable) {
             callback.onFailure(throwable);
         }
     }
 
     /**
-     * Fetches all online Discord users from the known guilds.
+     * Fetches all online Discord users from the known guilds, from the {@link DiscordUserIndex}.
      *
      * @param callback
      *         The callback to invoke when users have been collected.
@@ -68,7 +66,59 @@ public class SpongePlayerUserLookup extends MalleablePlayerUserLookup<SpongeCont
     @Override
     public void getOnlineUsers(FutureCallback<Stream<User>> callback) {
         try {
-            callback.onSuccess(getContext().getJda().getUsers().stream());
+            callback.onSuccess(getContext().getUserIndex().getUsers().stream());
+        } catch (Throwable throwable) {
+            callback.onFailure(throwable);
+        }
+    }
+
+    /**
+     * Fetches a Discord user by id from the {@link DiscordUserIndex}, without scanning the known users.
+     *
+     * @param id
+     *         The id of the user
+     * @param callback
+     *         The callback to invoke with the user, or null if not known.
+     */
+    public void getUser(long id, FutureCallback<User> callback) {
+        try {
+            callback.onSuccess(getContext().getUserIndex().getUser(id));
+        } catch (Throwable throwable) {
+            callback.onFailure(throwable);
+        }
+    }
+
+    /**
+     * Fetches the Discord users with a name or nickname from the {@link DiscordUserIndex}, ignoring case, without
+     * scanning the known users.
+     *
+     * @param name
+     *         The name to look for
+     * @param callback
+     *         The callback to invoke with the users.
+     */
+    public void getUsersByName(String name, FutureCallback<Stream<User>> callback) {
+        try {
+            callback.onSuccess(getContext().getUserIndex().getUsersByName(name).stream());
+        } catch (Throwable throwable) {
+            callback.onFailure(throwable);
+        }
+    }
+
+    /**
+     * Fetches Discord users by name or nickname prefix from the {@link DiscordUserIndex}, ignoring case, without
+     * scanning the known users.
+     *
+     * @param prefix
+     *         The prefix to look for
+     * @param limit
+     *         The maximum amount of users to find
+     * @param callback
+     *         The callback to invoke with the users, ordered by the name they matched on.
+     */
+    public void findUsers(String prefix, int limit, FutureCallback<Stream<User>> callback) {
+        try {
+            callback.onSuccess(getContext().getUserIndex().findUsersByPrefix(prefix, limit).stream());
         } catch (Throwable throwable) {
             callback.onFailure(throwable);
         }
@@ -22,6 +22,7 @@ import com.discordsrv.core.api.user.MinecraftPlayer;
 import com.discordsrv.core.role.MalleableTeamRoleLookup;
 import com.discordsrv.sponge.SpongeContext;
 import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.entities.Role;
 
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -51,7 +52,11 @@ public class SpongeTeamRoleLookup extends MalleableTeamRoleLookup<SpongeContext>
      */
     @Override
     public void getKnownTeams(FutureCallback<Stream<Team<MinecraftPlayer>>> callback) {
-        // TODO
+        try {
+            callback.onSuccess(getContext().getTeamIndex().getTeams().stream().map(team -> team));
+        } catch (Throwable throwable) {
+            callback.onFailure(throwable);
+        }
     }
 
     /**
@@ -63,7 +68,11 @@ public class SpongeTeamRoleLookup extends MalleableTeamRoleLookup<SpongeContext>
     @Override
     public void getKnownRoles(FutureCallback<Stream<Role>> callback) {
         try {
-            callback.onSuccess(getContext().getJda().getRoles().stream());
+            JDA jda = getContext().getJda();
+            if (jda == null) {
+                throw new IllegalStateException("Not logged in to Discord yet");
+            }
+            callback.onSuccess(jda.getRoles().stream());
         } catch (Throwable throwable) {
             callback.onFailure(throwable);
         }
@@ -0,0 +1,167 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.metrics;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram type, for recording latencies from many threads without locking.
+ * <p>
+ * Latencies are counted in microseconds in log-linear buckets: every power of two is split into four buckets, so a
+ * reported percentile is at most 25% above the true value. Recording is a few atomic increments and never allocates.
+ */
+@ParametersAreNonnullByDefault
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos
+     *         The latency, in nanoseconds
+     */
+    public void record(final long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        sum.add(micros);
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Fetches the amount of recorded latencies.
+     *
+     * @return count The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Fetches the sum of recorded latencies.
+     *
+     * @return sum The sum, in microseconds.
+     */
+    public long getSumMicros() {
+        return sum.sum();
+    }
+
+    /**
+     * Fetches the largest recorded latency.
+     *
+     * @return max The maximum, in microseconds.
+     */
+    public long getMaxMicros() {
+        return max.get();
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies.
+     *
+     * @param quantile
+     *         The quantile, between 0 and 1
+     *
+     * @return percentile The upper bound of the bucket holding the percentile, in microseconds, or 0 if empty.
+     */
+    public long getPercentileMicros(final double quantile) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long bucket : snapshot) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int index = 0; index < snapshot.length; index++) {
+            seen += snapshot[index];
+            if (seen >= target) {
+                return Math.min(upperBound(index), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Counts the recorded latencies at or below a bound, for exporting cumulative buckets.
+     *
+     * @param snapshot
+     *         A snapshot from {@link #snapshot()}
+     * @param boundMicros
+     *         The bound, in microseconds; must be a power of two minus one, so it ends a bucket.
+     *
+     * @return count The amount of latencies at or below the bound.
+     */
+    public static long countAtOrBelow(final long[] snapshot, final long boundMicros) {
+        long total = 0;
+        for (int index = 0; index < snapshot.length && upperBound(index) <= boundMicros; index++) {
+            total += snapshot[index];
+        }
+        return total;
+    }
+
+    /**
+     * Copies the bucket counts.
+     *
+     * @return snapshot The bucket counts.
+     */
+    public long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int index = 0; index < BUCKETS; index++) {
+            snapshot[index] = counts.get(index);
+        }
+        return snapshot;
+    }
+
+    private static int index(final long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static long upperBound(final int index) {
+        return index + 1 < BUCKETS ? lowerBound(index + 1) - 1 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.metrics;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import com.discordsrv.sponge.SpongeContext;
+import com.discordsrv.sponge.link.CachingPlayerUserLinker;
+import com.discordsrv.sponge.metrics.RelayMetrics.Stage;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MetricsExporter type, for exposing the {@link RelayMetrics} over JMX and as a Prometheus text file.
+ * <p>
+ * The text file is meant for the node exporter's textfile collector; it is rewritten every {@code prometheus_interval}
+ * seconds and replaced atomically, so the collector never reads half a file.
+ */
+@ParametersAreNonnullByDefault
+public class MetricsExporter implements RelayMetricsMXBean {
+
+    private static final String OBJECT_NAME = "com.discordsrv.sponge:type=RelayMetrics";
+    private static final int MIN_BUCKET_EXPONENT = 4;
+    private static final int MAX_BUCKET_EXPONENT = 26;
+
+    private final SpongeContext context;
+    private final RelayMetrics metrics;
+    private final boolean jmx;
+    private final @Nullable Path prometheusFile;
+    private final long prometheusInterval;
+    private @Nullable ObjectName objectName;
+    private @Nullable ScheduledFuture<?> task;
+
+    /**
+     * Configured constructor.
+     *
+     * @param context
+     *         The context to read gauges from
+     * @param dataDirectory
+     *         The directory the Prometheus file is relative to
+     * @param jmx
+     *         jmx config option
+     * @param prometheusFile
+     *         prometheus_file config option, empty to disable
+     * @param prometheusInterval
+     *         prometheus_interval config option, in seconds
+     */
+    @Configured
+    public MetricsExporter(final @Val("context") SpongeContext context, final @Val("data_directory") Path dataDirectory,
+                           final @Val("jmx") boolean jmx, final @Val("prometheus_file") String prometheusFile,
+                           final @Val("prometheus_interval") long prometheusInterval) {
+        this.context = context;
+        this.metrics = context.getRelayMetrics();
+        this.jmx = jmx;
+        this.prometheusFile = prometheusFile.isEmpty() ? null : dataDirectory.resolve(prometheusFile);
+        this.prometheusInterval = Math.max(1, prometheusInterval);
+    }
+
+    /**
+     * Registers the MBean and starts writing the Prometheus file, as configured.
+     */
+    public synchronized void start() {
+        if (jmx && objectName == null) {
+            try {
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+                objectName = name;
+            } catch (JMException exception) {
+                exception.printStackTrace();
+            }
+        }
+        if (prometheusFile != null && task == null) {
+            task = context.getAsyncExecutor()
+                .scheduleAtFixedRate(this::writePrometheusFile, 0, prometheusInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Unregisters the MBean and stops writing the Prometheus file.
+     */
+    public synchronized void stop() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException exception) {
+                exception.printStackTrace();
+            }
+            objectName = null;
+        }
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Renders the metrics in the Prometheus text exposition format.
+     *
+     * @return text The rendered metrics.
+     */
+    public String renderPrometheus() {
+        StringBuilder builder = new StringBuilder(8192);
+        String latency = "discordsrv_relay_stage_latency_seconds";
+        builder.append("# HELP ").append(latency).append(" Latency of each stage of relaying a message to Discord.\n");
+        builder.append("# TYPE ").append(latency).append(" histogram\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = metrics.getLatencies(stage);
+            long[] snapshot = histogram.snapshot();
+            long total = LatencyHistogram.countAtOrBelow(snapshot, Long.MAX_VALUE);
+            for (int exponent = MIN_BUCKET_EXPONENT; exponent <= MAX_BUCKET_EXPONENT; exponent++) {
+                builder.append(latency).append("_bucket{stage=\"").append(stage.getLabel()).append("\",le=\"")
+                    .append((1L << exponent) / 1_000_000d).append("\"} ")
+                    .append(LatencyHistogram.countAtOrBelow(snapshot, (1L << exponent) - 1)).append('\n');
+            }
+            builder.append(latency).append("_bucket{stage=\"").append(stage.getLabel()).append("\",le=\"+Inf\"} ")
+                .append(total).append('\n');
+            builder.append(latency).append("_sum{stage=\"").append(stage.getLabel()).append("\"} ")
+                .append(histogram.getSumMicros() / 1_000_000d).append('\n');
+            builder.append(latency).append("_count{stage=\"").append(stage.getLabel()).append("\"} ").append(total)
+                .append('\n');
+        }
+        String failures = "discordsrv_relay_stage_failures_total";
+        builder.append("# HELP ").append(failures).append(" Failures in each stage of relaying a message to Discord.\n");
+        builder.append("# TYPE ").append(failures).append(" counter\n");
+        for (Stage stage : Stage.values()) {
+            builder.append(failures).append("{stage=\"").append(stage.getLabel()).append("\"} ")
+                .append(metrics.getFailures(stage)).append('\n');
+        }
+        appendSingle(builder, "discordsrv_relay_queue_depth", "gauge", "Messages waiting for the relay dispatcher.",
+            getQueueDepth());
+        appendSingle(builder, "discordsrv_relay_dropped_total", "counter",
+            "Messages dropped because the relay dispatcher queue was full.", getDroppedCount());
+        appendSingle(builder, "discordsrv_relay_backlog_dropped_total", "counter",
+            "Lines dropped because their channel's backlog was full.", context.getMessageSender().getDroppedCount());
+        appendSingle(builder, "discordsrv_relay_route_cache_hits_total", "counter",
+            "Routes answered from the route cache.", context.getRouteCache().getHitCount());
+        appendSingle(builder, "discordsrv_relay_route_cache_misses_total", "counter",
+            "Routes resolved through the lookup and linker.", context.getRouteCache().getMissCount());
+        if (context.getPlayerUserLinker() instanceof CachingPlayerUserLinker) {
+            CachingPlayerUserLinker linkCache = (CachingPlayerUserLinker) context.getPlayerUserLinker();
+            appendSingle(builder, "discordsrv_link_cache_hits_total", "counter",
+                "Remote link lookups answered from the link cache.", linkCache.getHitCount());
+            appendSingle(builder, "discordsrv_link_cache_misses_total", "counter",
+                "Remote link lookups that waited for the remote linker.", linkCache.getMissCount());
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return metrics.getLatencies(Stage.RECEIVED).getCount();
+    }
+
+    @Override
+    public long getAcknowledgedCount() {
+        return metrics.getLatencies(Stage.ACKNOWLEDGED).getCount();
+    }
+
+    @Override
+    public long getFailureCount() {
+        long total = 0;
+        for (Stage stage : Stage.values()) {
+            total += metrics.getFailures(stage);
+        }
+        return total;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return context.getRelayDispatcher().getQueueSize();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return context.getRelayDispatcher().getDroppedCount();
+    }
+
+    @Override
+    public double getRelayP50Millis() {
+        return metrics.getLatencies(Stage.ACKNOWLEDGED).getPercentileMicros(0.5) / 1000d;
+    }
+
+    @Override
+    public double getRelayP99Millis() {
+        return metrics.getLatencies(Stage.ACKNOWLEDGED).getPercentileMicros(0.99) / 1000d;
+    }
+
+    @Override
+    public Map<String, Double> getStageP99Millis() {
+        Map<String, Double> latencies = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage.getLabel(), metrics.getLatencies(stage).getPercentileMicros(0.99) / 1000d);
+        }
+        return latencies;
+    }
+
+    private void writePrometheusFile() {
+        Path file = prometheusFile;
+        if (file == null) {
+            return;
+        }
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temporary, renderPrometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private static void appendSingle(final StringBuilder builder, final String name, final String type,
+                                     final String help, final long value) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+}
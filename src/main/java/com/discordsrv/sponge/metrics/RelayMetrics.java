@@ -0,0 +1,139 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.metrics;
+
+import lombok.Getter;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RelayMetrics type, for recording how long each stage of relaying a message to Discord takes.
+ * <p>
+ * All recording is lock-free and allocation free, so it is safe on the server thread.
+ */
+@ParametersAreNonnullByDefault
+public class RelayMetrics {
+
+    private final Map<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> failures = new EnumMap<>(Stage.class);
+
+    /**
+     * Main constructor for the RelayMetrics type.
+     */
+    public RelayMetrics() {
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new LatencyHistogram());
+            failures.put(stage, new LongAdder());
+        }
+    }
+
+    /**
+     * Records the latency of a stage.
+     *
+     * @param stage
+     *         The stage
+     * @param nanos
+     *         The latency, in nanoseconds
+     */
+    public void record(final Stage stage, final long nanos) {
+        latencies.get(stage).record(nanos);
+    }
+
+    /**
+     * Records the latency of a stage which started at the given time.
+     *
+     * @param stage
+     *         The stage
+     * @param startNanos
+     *         The {@link System#nanoTime()} the stage started at; 0 records nothing
+     */
+    public void recordSince(final Stage stage, final long startNanos) {
+        if (startNanos != 0) {
+            latencies.get(stage).record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Counts a failure in a stage.
+     *
+     * @param stage
+     *         The stage
+     */
+    public void fail(final Stage stage) {
+        failures.get(stage).increment();
+    }
+
+    /**
+     * Fetches the latencies of a stage.
+     *
+     * @param stage
+     *         The stage
+     *
+     * @return latencies The histogram of the stage.
+     */
+    public LatencyHistogram getLatencies(final Stage stage) {
+        return latencies.get(stage);
+    }
+
+    /**
+     * Fetches the amount of failures in a stage.
+     *
+     * @param stage
+     *         The stage
+     *
+     * @return failures The failure count.
+     */
+    public long getFailures(final Stage stage) {
+        return failures.get(stage).sum();
+    }
+
+    /**
+     * The stages of relaying a message.
+     */
+    public enum Stage {
+        /**
+         * From the event to the dispatcher picking it up.
+         */
+        RECEIVED("received"),
+        /**
+         * {@code MessageChannelChatLookup.lookup}, on route cache misses.
+         */
+        LOOKUP("lookup"),
+        /**
+         * {@code ChatChannelLinker.translate}, on route cache misses.
+         */
+        TRANSLATE("translate"),
+        /**
+         * From the event to the message being handed to JDA or the webhook.
+         */
+        QUEUED("queued"),
+        /**
+         * From the event to Discord acknowledging the message.
+         */
+        ACKNOWLEDGED("acknowledged");
+
+        @Getter private final String label;
+
+        Stage(final String label) {
+            this.label = label;
+        }
+    }
+}
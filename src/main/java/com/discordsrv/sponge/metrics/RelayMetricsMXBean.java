@@ -0,0 +1,82 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the relay metrics; latencies are in milliseconds, percentiles since the server started.
+ */
+public interface RelayMetricsMXBean {
+
+    /**
+     * Fetches the amount of messages picked up by the dispatcher.
+     *
+     * @return count The count.
+     */
+    long getReceivedCount();
+
+    /**
+     * Fetches the amount of messages acknowledged by Discord.
+     *
+     * @return count The count.
+     */
+    long getAcknowledgedCount();
+
+    /**
+     * Fetches the amount of failures in every stage together.
+     *
+     * @return count The count.
+     */
+    long getFailureCount();
+
+    /**
+     * Fetches the amount of messages waiting for the dispatcher.
+     *
+     * @return depth The queue depth.
+     */
+    int getQueueDepth();
+
+    /**
+     * Fetches the amount of messages dropped because the dispatcher queue was full.
+     *
+     * @return count The count.
+     */
+    long getDroppedCount();
+
+    /**
+     * Fetches the median latency from event to acknowledgement.
+     *
+     * @return latency The latency, in milliseconds.
+     */
+    double getRelayP50Millis();
+
+    /**
+     * Fetches the 99th percentile latency from event to acknowledgement.
+     *
+     * @return latency The latency, in milliseconds.
+     */
+    double getRelayP99Millis();
+
+    /**
+     * Fetches the 99th percentile latency of every stage.
+     *
+     * @return latencies The latencies by stage, in milliseconds.
+     */
+    Map<String, Double> getStageP99Millis();
+}
@@ -0,0 +1,460 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import com.discordsrv.sponge.metrics.RelayMetrics;
+import com.discordsrv.sponge.metrics.RelayMetrics.Stage;
+import com.discordsrv.sponge.text.TextRenderer;
+import com.discordsrv.sponge.trace.Trace;
+import lombok.Value;
+import net.dv8tion.jda.core.entities.TextChannel;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * DiscordMessageSender type, for coalescing outbound lines into as few Discord messages as possible.
+ * <p>
+ * Every {@link TextChannel} gets its own queue. Lines arriving within the flush window are merged into one message of
+ * at most {@link #MAX_MESSAGE_LENGTH} characters, and only one message per channel is in flight at a time. While JDA
+ * holds a request back for the channel's rate-limit bucket, new lines keep collecting and go out together as soon as
+ * the previous message is acknowledged, so the send rate follows the bucket instead of falling behind it. Each
+ * channel buffers at most {@code max_backlog} lines; further lines are dropped and counted. A message that isn't
+ * acknowledged within {@code in_flight_timeout} counts as failed, so a lost callback can't stall the channel.
+ * <p>
+ * Lines longer than one message are split at the last whitespace where no markdown span is open, falling back to any
+ * whitespace and then to a hard cut which never separates a surrogate pair or an escape from the character it escapes.
+ * <p>
+ * When the {@link WebhookSender} is enabled, lines with an author are sent through a webhook as that player instead,
+ * merging only consecutive lines of the same author. If the webhook fails, the channel falls back to the bot for a
+ * while and the lines are sent again with the author's name appended.
+ */
+@ParametersAreNonnullByDefault
+public class DiscordMessageSender {
+
+    /**
+     * The maximum length of a Discord message's content.
+     */
+    public static final int MAX_MESSAGE_LENGTH = 2000;
+
+    private static final long WEBHOOK_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final String MARKERS = "*_~|`";
+
+    private final Map<Long, ChannelQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ScheduledExecutorService executor;
+    private final WebhookSender webhookSender;
+    private final RelayMetrics metrics;
+    private final long flushWindow;
+    private final int maxBacklog;
+    private final long inFlightTimeout;
+
+    /**
+     * Configured constructor.
+     *
+     * @param executor
+     *         Executor used for scheduling flushes
+     * @param webhookSender
+     *         Sender used for lines with an author, when enabled
+     * @param metrics
+     *         Metrics to record the queued and acknowledged stages in
+     * @param flushWindow
+     *         flush_window config option, in milliseconds
+     * @param maxBacklog
+     *         max_backlog config option, in lines per channel
+     * @param inFlightTimeout
+     *         in_flight_timeout config option, in milliseconds
+     */
+    @Configured
+    public DiscordMessageSender(final @Val("async_executor") ScheduledExecutorService executor,
+                                final @Val("webhook_sender") WebhookSender webhookSender,
+                                final @Val("metrics") RelayMetrics metrics,
+                                final @Val("flush_window") long flushWindow,
+                                final @Val("max_backlog") int maxBacklog,
+                                final @Val("in_flight_timeout") long inFlightTimeout) {
+        this.executor = executor;
+        this.webhookSender = webhookSender;
+        this.metrics = metrics;
+        this.flushWindow = Math.max(0, flushWindow);
+        this.maxBacklog = Math.max(1, maxBacklog);
+        this.inFlightTimeout = Math.max(1, inFlightTimeout);
+    }
+
+    /**
+     * Queues a line to be sent to the given channel.
+     *
+     * @param channel
+     *         The channel to send the line to
+     * @param line
+     *         The line to send, as Discord markdown
+     */
+    public void send(final TextChannel channel, final String line) {
+        send(channel, line, null, null, 0, null);
+    }
+
+    /**
+     * Queues a line written by a player to be sent to the given channel.
+     *
+     * @param channel
+     *         The channel to send the line to
+     * @param line
+     *         The line to send, as Discord markdown
+     * @param authorId
+     *         The unique id of the player that wrote the line
+     * @param authorName
+     *         The name of the player that wrote the line
+     * @param receivedAt
+     *         The {@link System#nanoTime()} the line's event was captured at, or 0 to not record metrics
+     * @param trace
+     *         The trace of the line's message, if it was sampled
+     */
+    public void send(final TextChannel channel, final String line, final @Nullable UUID authorId,
+                     final @Nullable String authorName, final long receivedAt, final @Nullable Trace trace) {
+        if (line.isEmpty()) {
+            return;
+        }
+        String suffix = "";
+        if (authorId != null && authorName != null) {
+            StringBuilder builder = new StringBuilder(authorName.length() + 3).append(" (");
+            TextRenderer.escape(authorName, builder);
+            suffix = builder.append(')').toString();
+        }
+        queues.computeIfAbsent(channel.getIdLong(), id -> new ChannelQueue())
+            .offer(channel, line, authorId, authorName, suffix, receivedAt, trace);
+    }
+
+    /**
+     * Fetches the amount of lines dropped because their channel's backlog was full.
+     *
+     * @return dropped The drop count.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Sends a message through the bot, invoking one of the callbacks once Discord answered.
+     *
+     * @param channel
+     *         The channel to send the message to
+     * @param message
+     *         The message content
+     * @param onSuccess
+     *         Invoked once Discord accepted the message
+     * @param onFailure
+     *         Invoked if the message could not be sent
+     */
+    void sendAsBot(final TextChannel channel, final String message, final Runnable onSuccess,
+                   final Consumer<Throwable> onFailure) {
+        channel.sendMessage(message).queue(sent -> onSuccess.run(), onFailure);
+    }
+
+    /**
+     * Finds where to end the part of a line starting at an index, so it is at most a given length.
+     *
+     * @param line
+     *         The line to split
+     * @param start
+     *         The index the part starts at
+     * @param maxLength
+     *         The maximum length of the part
+     *
+     * @return end The index the part ends at, exclusive; the next part starts there.
+     */
+    static int splitPoint(final CharSequence line, final int start, final int maxLength) {
+        int limit = start + maxLength;
+        if (limit >= line.length()) {
+            return line.length();
+        }
+        int balanced = -1;
+        int whitespace = -1;
+        int open = 0;
+        boolean escaped = false;
+        for (int i = start; i < limit; i++) {
+            char c = line.charAt(i);
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (Character.isWhitespace(c)) {
+                whitespace = i + 1;
+                if (open == 0) {
+                    balanced = i + 1;
+                }
+            } else {
+                int marker = MARKERS.indexOf(c);
+                if (marker >= 0) {
+                    int run = 1;
+                    while (i + 1 < limit && line.charAt(i + 1) == c) {
+                        run++;
+                        i++;
+                    }
+                    // a run of one or two markers, or both, toggles the spans of that length; "***" opens * and **
+                    open ^= (run & 3) << (marker * 2);
+                }
+            }
+        }
+        // parts shorter than half a message aren't worth keeping a span whole
+        if (balanced > start + maxLength / 2) {
+            return balanced;
+        }
+        if (whitespace > start + maxLength / 2) {
+            return whitespace;
+        }
+        int end = limit;
+        if (Character.isHighSurrogate(line.charAt(end - 1)) && Character.isLowSurrogate(line.charAt(end))) {
+            end--;
+        }
+        int backslashes = 0;
+        while (end - backslashes - 1 >= start && line.charAt(end - backslashes - 1) == '\\') {
+            backslashes++;
+        }
+        if (backslashes % 2 == 1) {
+            end--;
+        }
+        return end > start ? end : limit;
+    }
+
+    /**
+     * A queued line.
+     */
+    @Value
+    private static class Line {
+
+        private final String content;
+        private final String botText;
+        private final @Nullable UUID authorId;
+        private final @Nullable String authorName;
+        private final long receivedAt;
+        private final @Nullable Trace trace;
+    }
+
+    /**
+     * Per channel line buffer; guarded by its own monitor.
+     */
+    private final class ChannelQueue {
+
+        private final ArrayDeque<Line> lines = new ArrayDeque<>();
+        private TextChannel channel;
+        private int bufferedLength;
+        private boolean inFlight;
+        private long sent;
+        private long webhookRetryAt;
+        private ScheduledFuture<?> scheduledFlush;
+        private ScheduledFuture<?> timeout;
+
+        private synchronized void offer(final TextChannel channel, final String line, final @Nullable UUID authorId,
+                                        final @Nullable String authorName, final String suffix,
+                                        final long receivedAt, final @Nullable Trace trace) {
+            this.channel = channel;
+            if (lines.size() >= maxBacklog) {
+                dropped.incrementAndGet();
+                if (trace != null) {
+                    trace.span("dropped", "channel backlog full");
+                }
+                return;
+            }
+            int partLength = MAX_MESSAGE_LENGTH - suffix.length();
+            for (int start = 0, end; start < line.length(); start = end) {
+                end = splitPoint(line, start, partLength);
+                String part = line.substring(start, end);
+                Line queued =
+                    new Line(part, suffix.isEmpty() ? part : part + suffix, authorId, authorName, receivedAt, trace);
+                lines.add(queued);
+                bufferedLength += queued.getBotText().length() + 1;
+            }
+            if (inFlight) {
+                // the acknowledgement of the current message triggers the next flush
+                return;
+            }
+            if (bufferedLength > MAX_MESSAGE_LENGTH || flushWindow == 0) {
+                cancelScheduledFlush();
+                executor.execute(this::flush);
+            } else if (scheduledFlush == null) {
+                scheduledFlush = executor.schedule(this::flush, flushWindow, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flush() {
+            TextChannel target;
+            List<Line> batch = new ArrayList<>();
+            boolean webhook;
+            String message;
+            long id;
+            synchronized (this) {
+                scheduledFlush = null;
+                if (inFlight || lines.isEmpty()) {
+                    return;
+                }
+                Line first = lines.poll();
+                webhook = viaWebhook(first);
+                StringBuilder builder = new StringBuilder(Math.min(bufferedLength, MAX_MESSAGE_LENGTH));
+                builder.append(webhook ? first.getContent() : first.getBotText());
+                batch.add(first);
+                while (!lines.isEmpty()) {
+                    Line next = lines.peek();
+                    String text = webhook ? next.getContent() : next.getBotText();
+                    if (viaWebhook(next) != webhook || webhook && !first.getAuthorId().equals(next.getAuthorId())
+                        || builder.length() + 1 + text.length() > MAX_MESSAGE_LENGTH) {
+                        break;
+                    }
+                    builder.append('\n').append(text);
+                    batch.add(lines.poll());
+                }
+                batch.forEach(line -> bufferedLength -= line.getBotText().length() + 1);
+                inFlight = true;
+                id = ++sent;
+                target = channel;
+                message = builder.toString();
+                timeout = executor.schedule(() -> {
+                    if (complete(id)) {
+                        metrics.fail(Stage.ACKNOWLEDGED);
+                        failed(batch, new TimeoutException("Not acknowledged within " + inFlightTimeout + " ms"));
+                        next();
+                    }
+                }, inFlightTimeout, TimeUnit.MILLISECONDS);
+            }
+            String via = (webhook ? "webhook" : "bot") + ", " + batch.size() + " lines in message";
+            batch.forEach(line -> {
+                metrics.recordSince(Stage.QUEUED, line.getReceivedAt());
+                if (line.getTrace() != null) {
+                    line.getTrace().span("queued", via);
+                }
+            });
+            try {
+                if (webhook) {
+                    Line first = batch.get(0);
+                    webhookSender.execute(target, first.getAuthorId(), first.getAuthorName(), message, () -> {
+                        if (complete(id)) {
+                            delivered(batch);
+                            next();
+                        }
+                    }, throwable -> {
+                        if (complete(id)) {
+                            throwable.printStackTrace();
+                            metrics.fail(Stage.ACKNOWLEDGED);
+                            failed(batch, throwable);
+                            fallBack(batch);
+                        }
+                    });
+                } else {
+                    sendAsBot(target, message, () -> {
+                        if (complete(id)) {
+                            delivered(batch);
+                            next();
+                        }
+                    }, throwable -> {
+                        if (complete(id)) {
+                            throwable.printStackTrace();
+                            metrics.fail(Stage.ACKNOWLEDGED);
+                            failed(batch, throwable);
+                            next();
+                        }
+                    });
+                }
+            } catch (Throwable throwable) {
+                if (complete(id)) {
+                    throwable.printStackTrace();
+                    metrics.fail(Stage.QUEUED);
+                    failed(batch, throwable);
+                    next();
+                }
+            }
+        }
+
+        private void delivered(final List<Line> batch) {
+            batch.forEach(line -> {
+                metrics.recordSince(Stage.ACKNOWLEDGED, line.getReceivedAt());
+                if (line.getTrace() != null) {
+                    line.getTrace().span("acknowledged", null);
+                }
+            });
+        }
+
+        private void failed(final List<Line> batch, final Throwable throwable) {
+            batch.stream().filter(line -> line.getTrace() != null)
+                .forEach(line -> line.getTrace().span("failed", throwable.toString()));
+        }
+
+        private void fallBack(final List<Line> batch) {
+            synchronized (this) {
+                webhookRetryAt = System.currentTimeMillis() + WEBHOOK_RETRY_MILLIS;
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    lines.addFirst(batch.get(i));
+                    bufferedLength += batch.get(i).getBotText().length() + 1;
+                }
+            }
+            next();
+        }
+
+        /**
+         * Ends the message in flight, if it is still the given one; a late answer after a timeout is ignored.
+         *
+         * @param id
+         *         The id the message was sent with
+         *
+         * @return current Whether the message was still in flight.
+         */
+        private synchronized boolean complete(final long id) {
+            if (!inFlight || id != sent) {
+                return false;
+            }
+            inFlight = false;
+            if (timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+            return true;
+        }
+
+        private void next() {
+            synchronized (this) {
+                if (inFlight || lines.isEmpty()) {
+                    return;
+                }
+            }
+            executor.execute(this::flush);
+        }
+
+        private boolean viaWebhook(final Line line) {
+            return line.getAuthorId() != null && webhookSender.isEnabled()
+                && System.currentTimeMillis() >= webhookRetryAt;
+        }
+
+        private void cancelScheduledFlush() {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+    }
+}
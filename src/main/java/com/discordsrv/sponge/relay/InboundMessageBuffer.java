@@ -0,0 +1,173 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import lombok.Value;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageChannel;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InboundMessageBuffer type, for delivering Discord messages to Minecraft in tick-sized batches.
+ * <p>
+ * Messages may be offered from any thread. A single task on the sync executor delivers them once per tick, within a
+ * message and time budget; whatever is left waits for the next tick. If the backlog grows past its limit, the oldest
+ * messages are dropped to make room and collapsed into one "N more messages" line per channel, shown on the next tick
+ * ahead of the messages that followed them, so a Discord flood can't stall the server thread.
+ */
+@ParametersAreNonnullByDefault
+public class InboundMessageBuffer {
+
+    private static final long TICK_MILLIS = 50;
+
+    private final Queue<InboundMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Map<MessageChannel, AtomicInteger> collapsed = new ConcurrentHashMap<>();
+    private final int maxMessagesPerTick;
+    private final long maxNanosPerTick;
+    private final int maxBacklog;
+    private final MessageFanOut fanOut;
+    private ScheduledFuture<?> task;
+
+    /**
+     * Configured constructor.
+     *
+     * @param maxMessagesPerTick
+     *         max_messages_per_tick config option
+     * @param maxMillisPerTick
+     *         max_millis_per_tick config option
+     * @param maxBacklog
+     *         max_backlog config option
+     * @param fanOut
+     *         The fan-out used to deliver messages to the channel members
+     */
+    @Configured
+    public InboundMessageBuffer(final @Val("max_messages_per_tick") int maxMessagesPerTick,
+                                final @Val("max_millis_per_tick") double maxMillisPerTick,
+                                final @Val("max_backlog") int maxBacklog,
+                                final @Val("fan_out") MessageFanOut fanOut) {
+        this.maxMessagesPerTick = Math.max(1, maxMessagesPerTick);
+        this.maxNanosPerTick = Math.max(1, (long) (maxMillisPerTick * TimeUnit.MILLISECONDS.toNanos(1)));
+        this.maxBacklog = Math.max(1, maxBacklog);
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Starts the per tick delivery task.
+     *
+     * @param syncExecutor
+     *         The executor running on the server thread
+     */
+    public synchronized void start(final ScheduledExecutorService syncExecutor) {
+        if (task == null) {
+            task = syncExecutor.scheduleAtFixedRate(this::deliver, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the per tick delivery task; anything still buffered is discarded.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Queues a message for delivery on the server thread. Never blocks.
+     *
+     * @param channel
+     *         The channel to send the message to
+     * @param sender
+     *         The sender of the message
+     * @param message
+     *         The message
+     */
+    public void offer(final MessageChannel channel, final Object sender, final Text message) {
+        if (size.incrementAndGet() > maxBacklog) {
+            InboundMessage oldest = queue.poll();
+            if (oldest != null) {
+                size.decrementAndGet();
+                collapsed.computeIfAbsent(oldest.getChannel(), key -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+        queue.offer(new InboundMessage(channel, sender, message));
+    }
+
+    /**
+     * Fetches the amount of messages waiting to be delivered.
+     *
+     * @return size The backlog size.
+     */
+    public int getBacklogSize() {
+        return size.get();
+    }
+
+    private void deliver() {
+        long deadline = System.nanoTime() + maxNanosPerTick;
+        int delivered = 0;
+        if (!collapsed.isEmpty()) {
+            // the collapsed messages are older than anything still queued, so their notice goes first
+            for (MessageChannel channel : collapsed.keySet()) {
+                AtomicInteger overflow = collapsed.remove(channel);
+                if (overflow == null) {
+                    continue;
+                }
+                delivered++;
+                try {
+                    fanOut.deliver(channel, null, Text.of(overflow.get() + " more messages from Discord were not shown"));
+                } catch (Throwable throwable) {
+                    throwable.printStackTrace();
+                }
+            }
+        }
+        InboundMessage message;
+        while (delivered < maxMessagesPerTick && System.nanoTime() < deadline && (message = queue.poll()) != null) {
+            size.decrementAndGet();
+            delivered++;
+            try {
+                fanOut.deliver(message.getChannel(), message.getSender(), message.getMessage());
+            } catch (Throwable throwable) {
+                throwable.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * A message waiting for delivery.
+     */
+    @Value
+    private static class InboundMessage {
+
+        private final MessageChannel channel;
+        private final Object sender;
+        private final Text message;
+    }
+}
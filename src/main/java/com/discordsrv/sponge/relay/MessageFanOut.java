@@ -0,0 +1,196 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import org.spongepowered.api.Game;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.ChatTypeMessageReceiver;
+import org.spongepowered.api.text.channel.MessageChannel;
+import org.spongepowered.api.text.channel.MessageReceiver;
+import org.spongepowered.api.text.chat.ChatTypes;
+import org.spongepowered.api.util.Tristate;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageFanOut type, for delivering one rendered Discord message to many players.
+ * <p>
+ * A message is rendered into a {@link Text} by the caller once, and the same immutable instance is handed to every
+ * recipient. Online players that opted out, or have the {@value #RECEIVE_PERMISSION} permission explicitly denied, are
+ * kept in a muted set; it is usually empty, in which case delivering costs nothing per member beyond the send. Sponge
+ * has no event for permission changes, so the permission is checked again on join and then every {@value
+ * #REFRESH_MILLIS} ms. Everything must be used from the server thread.
+ */
+@ParametersAreNonnullByDefault
+public class MessageFanOut {
+
+    /**
+     * Permission that, when explicitly denied, stops a player from seeing Discord messages.
+     */
+    public static final String RECEIVE_PERMISSION = "discordsrv.chat.receive";
+
+    private static final long REFRESH_MILLIS = 1000;
+
+    private final Set<UUID> optedOut = new HashSet<>();
+    private final Set<UUID> muted = new HashSet<>();
+    private @Nullable ScheduledFuture<?> task;
+
+    /**
+     * Starts checking the permission of the online players again at a fixed rate.
+     *
+     * @param game
+     *         The game to find the online players in
+     * @param syncExecutor
+     *         The executor running on the server thread
+     */
+    public synchronized void start(final Game game, final ScheduledExecutorService syncExecutor) {
+        if (task == null) {
+            task = syncExecutor.scheduleAtFixedRate(() -> game.getServer().getOnlinePlayers().forEach(this::refresh),
+                REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops checking permissions.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Delivers a message to the members of a channel that receive Discord messages.
+     *
+     * @param channel
+     *         The channel to deliver to
+     * @param sender
+     *         The sender of the message, or null for notices from the plugin itself
+     * @param message
+     *         The rendered message
+     */
+    public void deliver(final MessageChannel channel, final @Nullable Object sender, final Text message) {
+        boolean anyMuted = !muted.isEmpty();
+        for (MessageReceiver member : channel.getMembers()) {
+            if (anyMuted && member instanceof Player && muted.contains(((Player) member).getUniqueId())) {
+                continue;
+            }
+            // the default transform hands back the same instance, so this only costs anything for plugin channels
+            Optional<Text> transformed = channel.transformMessage(sender, member, message, ChatTypes.CHAT);
+            if (!transformed.isPresent()) {
+                continue;
+            }
+            if (member instanceof ChatTypeMessageReceiver) {
+                ((ChatTypeMessageReceiver) member).sendMessage(ChatTypes.CHAT, transformed.get());
+            } else {
+                member.sendMessage(transformed.get());
+            }
+        }
+    }
+
+    /**
+     * Whether the player currently receives Discord messages.
+     *
+     * @param player
+     *         The player
+     *
+     * @return receiving True if Discord messages should be shown to the player.
+     */
+    public boolean isReceiving(final Player player) {
+        return !optedOut.contains(player.getUniqueId()) && !muted.contains(player.getUniqueId());
+    }
+
+    /**
+     * Sets whether a player opted out of Discord messages; kept until the server restarts.
+     *
+     * @param player
+     *         The player
+     * @param optOut
+     *         True to stop showing Discord messages to the player
+     */
+    public void setOptedOut(final Player player, final boolean optOut) {
+        if (optOut) {
+            optedOut.add(player.getUniqueId());
+        } else {
+            optedOut.remove(player.getUniqueId());
+        }
+        refresh(player);
+    }
+
+    /**
+     * Whether a player opted out of Discord messages.
+     *
+     * @param player
+     *         The player
+     *
+     * @return optedOut True if the player opted out.
+     */
+    public boolean isOptedOut(final Player player) {
+        return optedOut.contains(player.getUniqueId());
+    }
+
+    /**
+     * Checks again whether a player receives Discord messages, such as after their permissions changed.
+     *
+     * @param player
+     *         The player
+     */
+    public void refresh(final Player player) {
+        if (optedOut.contains(player.getUniqueId())
+            || player.getPermissionValue(player.getActiveContexts(), RECEIVE_PERMISSION) == Tristate.FALSE) {
+            muted.add(player.getUniqueId());
+        } else {
+            muted.remove(player.getUniqueId());
+        }
+    }
+
+    /**
+     * ClientConnectionEvent.Join listener.
+     *
+     * @param event
+     *         ClientConnectionEvent.Join
+     */
+    @Listener(order = Order.FIRST)
+    public void onJoin(ClientConnectionEvent.Join event) {
+        refresh(event.getTargetEntity());
+    }
+
+    /**
+     * ClientConnectionEvent.Disconnect listener.
+     *
+     * @param event
+     *         ClientConnectionEvent.Disconnect
+     */
+    @Listener(order = Order.LAST)
+    public void onDisconnect(ClientConnectionEvent.Disconnect event) {
+        muted.remove(event.getTargetEntity().getUniqueId());
+    }
+}
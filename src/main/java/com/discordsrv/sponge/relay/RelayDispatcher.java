@@ -0,0 +1,210 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import com.discordsrv.sponge.metrics.RelayMetrics;
+import com.discordsrv.sponge.trace.Trace;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.entities.TextChannel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RelayDispatcher type, for moving the Minecraft to Discord relay off the server thread.
+ * <p>
+ * Listeners {@link #offer(RelayMessage)} snapshots onto a bounded lock-free queue; a single dispatcher thread resolves
+ * the chat and channel for each of them and hands the result to the {@link DiscordMessageSender}. When the queue is
+ * full, new messages are dropped and counted rather than blocking the server thread.
+ */
+@ParametersAreNonnullByDefault
+public class RelayDispatcher implements Runnable {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Queue<RelayMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final RouteCache routeCache;
+    private final DiscordMessageSender messageSender;
+    private final RelayMetrics metrics;
+    private final int capacity;
+    private volatile boolean running;
+    private volatile boolean idle;
+    private volatile Thread thread;
+
+    /**
+     * Configured constructor.
+     *
+     * @param routeCache
+     *         The cache to resolve the channel of each message with
+     * @param messageSender
+     *         The sender to hand routed messages to
+     * @param metrics
+     *         The metrics to record the received stage in
+     * @param capacity
+     *         queue_capacity config option
+     */
+    @Configured
+    public RelayDispatcher(final @Val("route_cache") RouteCache routeCache,
+                           final @Val("message_sender") DiscordMessageSender messageSender,
+                           final @Val("metrics") RelayMetrics metrics, final @Val("queue_capacity") int capacity) {
+        this.routeCache = routeCache;
+        this.messageSender = messageSender;
+        this.metrics = metrics;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Starts the dispatcher thread. Messages offered before, such as while logging in to Discord, are dispatched first.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread dispatcherThread = new Thread(this, "DiscordSRV Relay Dispatcher");
+        dispatcherThread.setDaemon(true);
+        thread = dispatcherThread;
+        dispatcherThread.start();
+    }
+
+    /**
+     * Stops the dispatcher thread, after it has dispatched what is already queued.
+     *
+     * @throws InterruptedException
+     *         If interrupted while waiting for the thread to finish.
+     */
+    public synchronized void stop() throws InterruptedException {
+        Thread dispatcherThread = thread;
+        if (!running || dispatcherThread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(dispatcherThread);
+        dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+        thread = null;
+    }
+
+    /**
+     * Queues a message to be relayed. Never blocks.
+     *
+     * @param message
+     *         The message to relay
+     *
+     * @return queued Whether the message was queued, false if the queue was full.
+     */
+    public boolean offer(final RelayMessage message) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+            if (message.getTrace() != null) {
+                message.getTrace().span("dropped", "relay queue full");
+            }
+            return false;
+        }
+        queue.offer(message);
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * Fetches the amount of messages waiting to be dispatched.
+     *
+     * @return size The queue depth.
+     */
+    public int getQueueSize() {
+        return size.get();
+    }
+
+    /**
+     * Fetches the amount of messages dropped because the queue was full.
+     *
+     * @return dropped The drop count.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Dispatcher loop, do not call directly.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            RelayMessage message = queue.poll();
+            if (message == null) {
+                if (!running) {
+                    return;
+                }
+                idle = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            size.decrementAndGet();
+            try {
+                dispatch(message);
+            } catch (Throwable throwable) {
+                throwable.printStackTrace();
+            }
+        }
+    }
+
+    private void dispatch(final RelayMessage message) {
+        metrics.recordSince(RelayMetrics.Stage.RECEIVED, message.getReceivedAt());
+        final Trace trace = message.getTrace();
+        if (trace != null) {
+            trace.span("dispatch", null);
+        }
+        routeCache.resolve(message.getChannel(), trace, new FutureCallback<TextChannel>() {
+            @Override
+            public void onSuccess(@Nullable final TextChannel result) {
+                if (result == null) {
+                    if (trace != null) {
+                        trace.span("unrouted", "no Discord channel for " + message.getChannel().getClass().getName());
+                    }
+                    return;
+                }
+                messageSender.send(result, message.getDiscordMessage(), message.getPlayerId(),
+                    message.getPlayerName(), message.getReceivedAt(), trace);
+            }
+
+            @Override
+            public void onFailure(@Nonnull final Throwable throwable) {
+                if (trace != null) {
+                    trace.span("failed", throwable.toString());
+                }
+                throwable.printStackTrace();
+            }
+        });
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import com.discordsrv.sponge.text.TextRenderer;
+import com.discordsrv.sponge.trace.Trace;
+import lombok.Value;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.message.MessageChannelEvent;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageChannel;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * RelayMessage type, an immutable snapshot of a Minecraft message that should be relayed to Discord.
+ * <p>
+ * Captured on the server thread, then handed to the {@link RelayDispatcher} which does the lookups.
+ */
+@ParametersAreNonnullByDefault
+@Value
+public class RelayMessage {
+
+    private final Kind kind;
+    private final MessageChannel channel;
+    private final String message;
+    private final String discordMessage;
+    private final @Nullable UUID playerId;
+    private final @Nullable String playerName;
+    /**
+     * The {@link System#nanoTime()} the event was captured at.
+     */
+    private final long receivedAt;
+    /**
+     * The trace following this message, if it was sampled.
+     */
+    private final @Nullable Trace trace;
+
+    /**
+     * Captures the relevant state of a MessageChannelEvent. Cheap checks come first, and the formatter's text is built
+     * and rendered only once.
+     *
+     * @param kind
+     *         The kind of event
+     * @param event
+     *         The event to capture
+     * @param player
+     *         The player that the event is about, if any
+     * @param trace
+     *         The trace to follow the message with, if it was sampled
+     *
+     * @return message The snapshot, or null if the event has nothing to relay.
+     */
+    public static @Nullable RelayMessage capture(final Kind kind, final MessageChannelEvent event,
+                                                 final @Nullable Player player, final @Nullable Trace trace) {
+        long receivedAt = System.nanoTime();
+        if (event.isMessageCancelled()) {
+            return null;
+        }
+        Optional<MessageChannel> channel = event.getChannel();
+        if (!channel.isPresent()) {
+            return null;
+        }
+        Text text = event.getFormatter().toText();
+        if (text.isEmpty()) {
+            return null;
+        }
+        TextRenderer renderer = TextRenderer.get().render(text);
+        if (renderer.isEmpty()) {
+            return null;
+        }
+        return new RelayMessage(kind, channel.get(), renderer.getPlain(), renderer.getDiscord(),
+            player == null ? null : player.getUniqueId(), player == null ? null : player.getName(), receivedAt,
+            trace);
+    }
+
+    /**
+     * The kind of event a message originates from.
+     */
+    public enum Kind {
+        /**
+         * Player chat.
+         */
+        CHAT,
+        /**
+         * Player join.
+         */
+        JOIN,
+        /**
+         * Player disconnect.
+         */
+        LEAVE,
+        /**
+         * Player death.
+         */
+        DEATH,
+        /**
+         * Achievement grant (MC &lt;1.12).
+         */
+        ACHIEVEMENT,
+        /**
+         * Advancement grant (MC &gt;1.11).
+         */
+        ADVANCEMENT,
+        /**
+         * Any other channel message.
+         */
+        GENERIC
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import com.discordsrv.core.api.channel.ChatChannelLinker;
+import com.discordsrv.sponge.lookup.MessageChannelChatLookup;
+import com.discordsrv.sponge.metrics.RelayMetrics;
+import com.discordsrv.sponge.metrics.RelayMetrics.Stage;
+import com.discordsrv.sponge.trace.Trace;
+import com.discordsrv.sponge.unit.chat.SpongeChat;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
+import net.dv8tion.jda.core.events.channel.text.TextChannelDeleteEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+import org.spongepowered.api.text.channel.MessageChannel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RouteCache type, for caching the {@link TextChannel} a {@link MessageChannel} relays to.
+ * <p>
+ * Keys are weak and compared by identity, so channels of unloaded plugins are not pinned. Both positive and negative
+ * results are cached; the cache is cleared when a translator is added, and when Discord channels may have changed.
+ */
+@ParametersAreNonnullByDefault
+public class RouteCache extends ListenerAdapter {
+
+    private final Cache<MessageChannel, Optional<TextChannel>> routes = CacheBuilder.newBuilder().weakKeys().build();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final MessageChannelChatLookup messageChannelChatLookup;
+    private final ChatChannelLinker chatChannelLinker;
+    private final RelayMetrics metrics;
+
+    /**
+     * Main constructor for the RouteCache type.
+     *
+     * @param messageChannelChatLookup
+     *         The lookup to find the chat of a message channel with on a cache miss
+     * @param chatChannelLinker
+     *         The linker to find the text channel of a chat with on a cache miss
+     * @param metrics
+     *         The metrics to record lookup and translation latency to
+     */
+    public RouteCache(final MessageChannelChatLookup messageChannelChatLookup,
+                      final ChatChannelLinker chatChannelLinker, final RelayMetrics metrics) {
+        this.messageChannelChatLookup = messageChannelChatLookup;
+        this.chatChannelLinker = chatChannelLinker;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Resolves the TextChannel a MessageChannel relays to. The callback is invoked with null if there is none.
+     *
+     * @param messageChannel
+     *         The message channel to resolve
+     * @param callback
+     *         The callback to invoke with the result
+     */
+    public void resolve(final MessageChannel messageChannel, final FutureCallback<TextChannel> callback) {
+        resolve(messageChannel, null, callback);
+    }
+
+    /**
+     * Resolves the TextChannel a MessageChannel relays to, recording the hops in a trace. The callback is invoked with
+     * null if there is none.
+     *
+     * @param messageChannel
+     *         The message channel to resolve
+     * @param trace
+     *         The trace of the message being routed, if it was sampled
+     * @param callback
+     *         The callback to invoke with the result
+     */
+    public void resolve(final MessageChannel messageChannel, final @Nullable Trace trace,
+                        final FutureCallback<TextChannel> callback) {
+        Optional<TextChannel> route = routes.getIfPresent(messageChannel);
+        if (route != null) {
+            hits.increment();
+            if (trace != null) {
+                trace.span("route", "cache hit");
+            }
+            callback.onSuccess(route.orElse(null));
+            return;
+        }
+        misses.increment();
+        final long expected = generation.get();
+        final long lookupStart = System.nanoTime();
+        messageChannelChatLookup.lookup(messageChannel, trace, new FutureCallback<SpongeChat>() {
+            @Override
+            public void onSuccess(@Nullable final SpongeChat result) {
+                metrics.recordSince(Stage.LOOKUP, lookupStart);
+                if (result == null) {
+                    store(messageChannel, null, expected);
+                    callback.onSuccess(null);
+                    return;
+                }
+                final long translateStart = System.nanoTime();
+                chatChannelLinker.translate(result, new FutureCallback<TextChannel>() {
+                    @Override
+                    public void onSuccess(@Nullable final TextChannel result) {
+                        metrics.recordSince(Stage.TRANSLATE, translateStart);
+                        if (trace != null) {
+                            trace.span("translate", result == null ? "unlinked" : "channel " + result.getId());
+                        }
+                        store(messageChannel, result, expected);
+                        callback.onSuccess(result);
+                    }
+
+                    @Override
+                    public void onFailure(@Nonnull final Throwable throwable) {
+                        metrics.fail(Stage.TRANSLATE);
+                        callback.onFailure(throwable);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                metrics.fail(Stage.LOOKUP);
+                callback.onFailure(throwable);
+            }
+        });
+    }
+
+    /**
+     * Removes the cached route of a single MessageChannel.
+     *
+     * @param messageChannel
+     *         The message channel to forget
+     */
+    public void invalidate(final MessageChannel messageChannel) {
+        generation.incrementAndGet();
+        routes.invalidate(messageChannel);
+    }
+
+    /**
+     * Removes all cached routes; should be called whenever translators or channel configuration change.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        routes.invalidateAll();
+    }
+
+    /**
+     * Fetches the amount of lookups answered from the cache.
+     *
+     * @return hits The hit count.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Fetches the amount of lookups that had to go through the translators.
+     *
+     * @return misses The miss count.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Clears the cache after a reconnect, as JDA may have replaced its channel objects.
+     *
+     * @param event
+     *         ReconnectedEvent
+     */
+    @Override
+    public void onReconnect(final ReconnectedEvent event) {
+        invalidateAll();
+    }
+
+    /**
+     * Clears the cache when a text channel is deleted.
+     *
+     * @param event
+     *         TextChannelDeleteEvent
+     */
+    @Override
+    public void onTextChannelDelete(final TextChannelDeleteEvent event) {
+        invalidateAll();
+    }
+
+    private void store(final MessageChannel messageChannel, final @Nullable TextChannel textChannel,
+                       final long expected) {
+        // a result that was resolved before an invalidation may already be stale
+        if (generation.get() == expected) {
+            routes.put(messageChannel, Optional.ofNullable(textChannel));
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import lombok.Value;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.entities.Webhook;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * WebhookSender type, for sending messages to Discord as the player that wrote them.
+ * <p>
+ * Messages are posted to a per channel webhook (found or created once, then cached) with the player's name and avatar,
+ * over a pooled keep-alive HTTP client. Webhooks have their own rate-limit buckets; a 429 response is retried after
+ * the time Discord asks for. The API base url is configurable, so the sender can be pointed at a local stand-in.
+ */
+@ParametersAreNonnullByDefault
+public class WebhookSender {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final String WEBHOOK_NAME = "DiscordSRV";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_AFTER = 1000;
+
+    private final Map<Long, CompletableFuture<String>> webhookUrls = new ConcurrentHashMap<>();
+    private final Map<UUID, Avatar> avatarUrls;
+    private final ScheduledExecutorService executor;
+    private final OkHttpClient client;
+    private final boolean enabled;
+    private final String apiBase;
+    private final String avatarUrl;
+
+    /**
+     * Configured constructor.
+     *
+     * @param executor
+     *         Executor used for scheduling retries
+     * @param enabled
+     *         enabled config option
+     * @param apiBase
+     *         api_base config option
+     * @param avatarUrl
+     *         avatar_url config option, {uuid} and {name} are replaced with the player's
+     * @param avatarCacheSize
+     *         avatar_cache_size config option
+     */
+    @Configured
+    public WebhookSender(final @Val("async_executor") ScheduledExecutorService executor,
+                         final @Val("enabled") boolean enabled, final @Val("api_base") String apiBase,
+                         final @Val("avatar_url") String avatarUrl,
+                         final @Val("avatar_cache_size") int avatarCacheSize) {
+        this.executor = executor;
+        this.enabled = enabled;
+        this.apiBase = apiBase.endsWith("/") ? apiBase.substring(0, apiBase.length() - 1) : apiBase;
+        this.avatarUrl = avatarUrl;
+        this.avatarUrls = Collections.synchronizedMap(new LinkedHashMap<UUID, Avatar>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<UUID, Avatar> eldest) {
+                return size() > Math.max(1, avatarCacheSize);
+            }
+        });
+        this.client = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(4, 5, TimeUnit.MINUTES))
+            .retryOnConnectionFailure(true)
+            .build();
+    }
+
+    /**
+     * Whether messages should be sent through webhooks.
+     *
+     * @return enabled The enabled config option.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sends a message to a channel's webhook as a player.
+     *
+     * @param channel
+     *         The channel to send the message to
+     * @param authorId
+     *         The unique id of the player
+     * @param authorName
+     *         The name of the player
+     * @param content
+     *         The message content, as Discord markdown
+     * @param onSuccess
+     *         Invoked once Discord accepted the message
+     * @param onFailure
+     *         Invoked if the message could not be sent
+     */
+    public void execute(final TextChannel channel, final UUID authorId, final String authorName, final String content,
+                        final Runnable onSuccess, final Consumer<Throwable> onFailure) {
+        long channelId = channel.getIdLong();
+        CompletableFuture<String> webhookUrl = webhookUrls.computeIfAbsent(channelId, id -> findWebhook(channel));
+        webhookUrl.whenComplete((url, throwable) -> {
+            if (throwable != null) {
+                webhookUrls.remove(channelId, webhookUrl);
+                onFailure.accept(throwable);
+                return;
+            }
+            String body = new JSONObject()
+                .put("content", content)
+                .put("username", authorName)
+                .put("avatar_url", getAvatarUrl(authorId, authorName))
+                // nothing relayed from Minecraft may ping anyone
+                .put("allowed_mentions", new JSONObject().put("parse", new JSONArray()))
+                .toString();
+            post(channelId, url, body, 1, onSuccess, onFailure);
+        });
+    }
+
+    /**
+     * Closes the pooled connections and stops the client's threads.
+     */
+    public void shutdown() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private String getAvatarUrl(final UUID playerId, final String playerName) {
+        Avatar avatar = avatarUrls.get(playerId);
+        if (avatar == null || !avatar.getName().equals(playerName)) {
+            // the name is part of the key, so a renamed player gets a new url
+            avatar = new Avatar(playerName,
+                avatarUrl.replace("{uuid}", playerId.toString()).replace("{name}", playerName));
+            avatarUrls.put(playerId, avatar);
+        }
+        return avatar.getUrl();
+    }
+
+    private CompletableFuture<String> findWebhook(final TextChannel channel) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            channel.getWebhooks().queue(webhooks -> {
+                Optional<Webhook> existing = webhooks.stream()
+                    .filter(webhook -> WEBHOOK_NAME.equals(webhook.getName()) && webhook.getToken() != null)
+                    .findFirst();
+                if (existing.isPresent()) {
+                    future.complete(toUrl(existing.get()));
+                } else {
+                    channel.createWebhook(WEBHOOK_NAME)
+                        .queue(webhook -> future.complete(toUrl(webhook)), future::completeExceptionally);
+                }
+            }, future::completeExceptionally);
+        } catch (Throwable throwable) {
+            // e.g. missing the Manage Webhooks permission
+            future.completeExceptionally(throwable);
+        }
+        return future;
+    }
+
+    private String toUrl(final Webhook webhook) {
+        return apiBase + "/webhooks/" + webhook.getId() + "/" + webhook.getToken();
+    }
+
+    private void post(final long channelId, final String url, final String body, final int attempt,
+                      final Runnable onSuccess, final Consumer<Throwable> onFailure) {
+        Request request = new Request.Builder().url(url).post(RequestBody.create(JSON, body)).build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(final Call call, final IOException exception) {
+                onFailure.accept(exception);
+            }
+
+            @Override
+            public void onResponse(final Call call, final Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                    if (response.isSuccessful()) {
+                        onSuccess.run();
+                    } else if (response.code() == 429 && attempt < MAX_ATTEMPTS) {
+                        long retryAfter = getRetryAfter(responseBody);
+                        executor.schedule(() -> post(channelId, url, body, attempt + 1, onSuccess, onFailure),
+                            retryAfter, TimeUnit.MILLISECONDS);
+                    } else {
+                        if (response.code() == 404) {
+                            // the webhook was deleted, look it up again next time
+                            webhookUrls.remove(channelId);
+                        }
+                        onFailure.accept(new IOException("Webhook responded with HTTP " + response.code()));
+                    }
+                } catch (Throwable throwable) {
+                    onFailure.accept(throwable);
+                }
+            }
+        });
+    }
+
+    private static long getRetryAfter(final ResponseBody body) {
+        try {
+            return Math.max(0, new JSONObject(body.string()).optLong("retry_after", DEFAULT_RETRY_AFTER));
+        } catch (IOException | JSONException exception) {
+            return DEFAULT_RETRY_AFTER;
+        }
+    }
+
+    /**
+     * A cached avatar url, along with the name it was built for.
+     */
+    @Value
+    private static class Avatar {
+
+        private final String name;
+        private final String url;
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.sync;
+
+import com.discordsrv.core.api.user.MinecraftPlayer;
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+import com.discordsrv.sponge.SpongeContext;
+import com.discordsrv.sponge.unit.SpongeMinecraftPlayer;
+import com.discordsrv.sponge.unit.SpongeTeam;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import lombok.Value;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Role;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.ReconnectedEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.core.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.core.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.core.hooks.ListenerAdapter;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.Order;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * TeamRoleSynchronizer type, for keeping the Discord roles linked to scoreboard teams in step with the teams.
+ * <p>
+ * Players whose team membership changed are marked and coalesced, so a player is pending at most once at their
+ * highest priority. Every interval a batch of pending players is diffed against their current roles, and only
+ * players whose roles differ queue a role change. Changes are coalesced per member as well: a newer diff replaces the
+ * queued change of the same member in place, so a burst of team changes sends one role update. Each interval then
+ * sends at most {@code max_requests_per_interval} queued changes, taking a request token right before sending each, so
+ * the diffs completing asynchronously can't exceed the limit. New players are only diffed while the queued changes fit
+ * in one interval. A full reconcile of the online players only happens every {@code reconcile_interval} minutes, or
+ * after a reconnect.
+ */
+@ParametersAreNonnullByDefault
+public class TeamRoleSynchronizer extends ListenerAdapter implements Runnable {
+
+    private static final String REASON = "DiscordSRV team synchronisation";
+
+    private final SpongeContext context;
+    private final boolean enabled;
+    private final long interval;
+    private final int maxRequestsPerInterval;
+    private final int batchSize;
+    private final long reconcileInterval;
+    private final Map<UUID, Priority> pending = new ConcurrentHashMap<>();
+    private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<MemberKey, RoleChange> changes = new ConcurrentHashMap<>();
+    private final Queue<MemberKey> changeOrder = new ConcurrentLinkedQueue<>();
+    private final Runnable teamsListener = this::onTeamsChanged;
+    private final Map<String, Optional<Role>> teamRoles = new ConcurrentHashMap<>();
+    private volatile ImmutableList<SpongeTeam> teams = ImmutableList.of();
+    private volatile long lastReconcile;
+    private @Nullable ScheduledFuture<?> task;
+
+    /**
+     * Configured constructor.
+     *
+     * @param context
+     *         The context to synchronise in
+     * @param enabled
+     *         enabled config option
+     * @param interval
+     *         interval config option, in milliseconds
+     * @param maxRequestsPerInterval
+     *         max_requests_per_interval config option
+     * @param batchSize
+     *         batch_size config option
+     * @param reconcileInterval
+     *         reconcile_interval config option, in minutes
+     */
+    @Configured
+    public TeamRoleSynchronizer(final @Val("context") SpongeContext context, final @Val("enabled") boolean enabled,
+                                final @Val("interval") long interval,
+                                final @Val("max_requests_per_interval") int maxRequestsPerInterval,
+                                final @Val("batch_size") int batchSize,
+                                final @Val("reconcile_interval") long reconcileInterval) {
+        this.context = context;
+        this.enabled = enabled;
+        this.interval = Math.max(50, interval);
+        this.maxRequestsPerInterval = Math.max(1, maxRequestsPerInterval);
+        this.batchSize = Math.max(1, batchSize);
+        this.reconcileInterval = TimeUnit.MINUTES.toMillis(Math.max(1, reconcileInterval));
+    }
+
+    /**
+     * Starts synchronising, if enabled; the first run reconciles every online player.
+     */
+    public synchronized void start() {
+        if (enabled && task == null) {
+            context.getTeamIndex().addChangeListener(teamsListener);
+            teams = context.getTeamIndex().getTeams();
+            task = context.getAsyncExecutor().scheduleAtFixedRate(this, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops synchronising; pending players are dropped.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        context.getTeamIndex().removeChangeListener(teamsListener);
+        pending.clear();
+        queue.clear();
+        changes.clear();
+        changeOrder.clear();
+    }
+
+    /**
+     * Marks a player for synchronisation. Marking an already pending player only raises its priority.
+     *
+     * @param uniqueId
+     *         The unique id of the player
+     * @param priority
+     *         The priority to synchronise the player with
+     */
+    public void mark(final UUID uniqueId, final Priority priority) {
+        if (!enabled) {
+            return;
+        }
+        Priority previous = pending.putIfAbsent(uniqueId, priority);
+        while (previous != null) {
+            if (previous.compareTo(priority) <= 0) {
+                return;
+            }
+            if (pending.replace(uniqueId, previous, priority)) {
+                break;
+            }
+            previous = pending.putIfAbsent(uniqueId, priority);
+        }
+        queue.add(new Entry(uniqueId, priority, sequence.getAndIncrement()));
+    }
+
+    /**
+     * Fetches the amount of players waiting to be synchronised.
+     *
+     * @return pending The amount of pending players.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Sends the role changes this interval allows, then diffs the next batch of pending players.
+     */
+    @Override
+    public void run() {
+        try {
+            int tokens = maxRequestsPerInterval;
+            MemberKey key;
+            while (tokens > 0 && (key = changeOrder.poll()) != null) {
+                RoleChange change = changes.remove(key);
+                if (change != null && change.send()) {
+                    tokens--;
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastReconcile >= reconcileInterval) {
+                lastReconcile = now;
+                teamRoles.clear();
+                context.getOnlinePlayerRegistry().stream()
+                    .forEach(player -> mark(player.getPlayer().getUniqueId(), Priority.LOW));
+            }
+            List<SpongeMinecraftPlayer> batch = new ArrayList<>();
+            for (int i = 0; i < batchSize && changes.size() < maxRequestsPerInterval; i++) {
+                Entry entry = queue.poll();
+                if (entry == null) {
+                    break;
+                }
+                // superseded by an entry with a higher priority
+                if (!pending.remove(entry.uniqueId, entry.priority)) {
+                    continue;
+                }
+                SpongeMinecraftPlayer player = context.getOnlinePlayerRegistry().get(entry.uniqueId);
+                if (player != null) {
+                    batch.add(player);
+                }
+            }
+            if (!batch.isEmpty()) {
+                synchronise(batch);
+            }
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+        }
+    }
+
+    /**
+     * Marks the online players whose team membership changed in the latest team snapshot.
+     */
+    private void onTeamsChanged() {
+        ImmutableList<SpongeTeam> previous = teams;
+        ImmutableList<SpongeTeam> current = context.getTeamIndex().getTeams();
+        teams = current;
+        Map<String, Set<String>> before = membership(previous);
+        Map<String, Set<String>> after = membership(current);
+        Set<String> changed = new HashSet<>();
+        for (String team : Sets.union(before.keySet(), after.keySet())) {
+            changed.addAll(Sets.symmetricDifference(before.getOrDefault(team, Collections.emptySet()),
+                after.getOrDefault(team, Collections.emptySet())));
+        }
+        if (!changed.isEmpty()) {
+            context.getOnlinePlayerRegistry().stream().filter(player -> changed.contains(player.getPlayer().getName()))
+                .forEach(player -> mark(player.getPlayer().getUniqueId(), Priority.HIGH));
+        }
+    }
+
+    private static Map<String, Set<String>> membership(List<SpongeTeam> teams) {
+        Map<String, Set<String>> membership = new HashMap<>();
+        teams.forEach(team -> membership.put(team.getName(), team.getMemberNames()));
+        return membership;
+    }
+
+    /**
+     * Diffs a batch of players against their roles, translating all of them to their users in one bulk lookup.
+     *
+     * @param players
+     *         The players to diff
+     */
+    private void synchronise(final List<SpongeMinecraftPlayer> players) {
+        ImmutableList<SpongeTeam> current = teams;
+        resolveRoles(current, roles -> {
+            if (roles.isEmpty()) {
+                return;
+            }
+            Map<UUID, SpongeMinecraftPlayer> byUniqueId = new HashMap<>(players.size() * 2);
+            players.forEach(player -> byUniqueId.put(player.getPlayer().getUniqueId(), player));
+            context.getPlayerUserLinker().translatePlayers(byUniqueId.keySet(), new FutureCallback<Map<UUID, Long>>() {
+                @Override
+                public void onSuccess(@Nullable final Map<UUID, Long> result) {
+                    if (result == null) {
+                        return;
+                    }
+                    Set<Role> managed = new HashSet<>(roles.values());
+                    result.forEach((uniqueId, snowflake) -> {
+                        User user = context.getUserIndex().getUser(snowflake);
+                        if (user == null) {
+                            return;
+                        }
+                        String name = byUniqueId.get(uniqueId).getPlayer().getName();
+                        Set<Role> desired = current.stream().filter(team -> team.getMemberNames().contains(name))
+                            .map(team -> roles.get(team.getName())).filter(role -> role != null)
+                            .collect(Collectors.toSet());
+                        apply(user, desired, managed);
+                    });
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    throwable.printStackTrace();
+                }
+            });
+        });
+    }
+
+    private void apply(final User user, final Set<Role> desired, final Set<Role> managed) {
+        Map<Guild, List<Role>> managedByGuild = managed.stream().collect(Collectors.groupingBy(Role::getGuild));
+        for (Map.Entry<Guild, List<Role>> guildRoles : managedByGuild.entrySet()) {
+            Member member = guildRoles.getKey().getMember(user);
+            if (member == null) {
+                continue;
+            }
+            List<Role> held = member.getRoles();
+            List<Role> add = guildRoles.getValue().stream().filter(role -> desired.contains(role) && !held.contains(role))
+                .collect(Collectors.toList());
+            List<Role> remove = guildRoles.getValue().stream()
+                .filter(role -> !desired.contains(role) && held.contains(role)).collect(Collectors.toList());
+            if (add.isEmpty() && remove.isEmpty()) {
+                continue;
+            }
+            // a change still waiting for this member is outdated, replace it but keep its place in line
+            MemberKey key = new MemberKey(member.getGuild().getIdLong(), member.getUser().getIdLong());
+            if (changes.put(key, new RoleChange(member, add, remove)) == null) {
+                changeOrder.add(key);
+            }
+        }
+    }
+
+    /**
+     * Resolves the role of every team, using the cache where possible.
+     *
+     * @param current
+     *         The teams to resolve
+     * @param callback
+     *         Invoked with every resolved team role, including those of teams which no longer exist, so their roles
+     *         are still removed from former members.
+     */
+    private void resolveRoles(final List<SpongeTeam> current, final Consumer<Map<String, Role>> callback) {
+        AtomicInteger remaining = new AtomicInteger(current.size() + 1);
+        Runnable done = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                Map<String, Role> roles = new HashMap<>();
+                teamRoles.forEach((team, role) -> role.ifPresent(value -> roles.put(team, value)));
+                callback.accept(roles);
+            }
+        };
+        for (SpongeTeam team : current) {
+            if (teamRoles.containsKey(team.getName())) {
+                done.run();
+                continue;
+            }
+            context.getTeamRoleLinker().translate(team, new FutureCallback<Role>() {
+                @Override
+                public void onSuccess(@Nullable final Role result) {
+                    teamRoles.put(team.getName(), Optional.ofNullable(result));
+                    done.run();
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    // not linked
+                    teamRoles.put(team.getName(), Optional.empty());
+                    done.run();
+                }
+            });
+        }
+        done.run();
+    }
+
+    /**
+     * Synchronises a joining player first.
+     *
+     * @param event
+     *         ClientConnectionEvent.Join
+     */
+    @Listener(order = Order.POST)
+    public void onJoin(ClientConnectionEvent.Join event) {
+        mark(event.getTargetEntity().getUniqueId(), Priority.HIGH);
+    }
+
+    /**
+     * Puts a member back in step if a managed role was added to them from Discord.
+     *
+     * @param event
+     *         GuildMemberRoleAddEvent
+     */
+    @Override
+    public void onGuildMemberRoleAdd(GuildMemberRoleAddEvent event) {
+        onRolesChanged(event.getUser(), event.getRoles());
+    }
+
+    /**
+     * Puts a member back in step if a managed role was removed from them from Discord.
+     *
+     * @param event
+     *         GuildMemberRoleRemoveEvent
+     */
+    @Override
+    public void onGuildMemberRoleRemove(GuildMemberRoleRemoveEvent event) {
+        onRolesChanged(event.getUser(), event.getRoles());
+    }
+
+    /**
+     * Forgets the resolved team roles, as a deleted role may have been linked to a team.
+     *
+     * @param event
+     *         RoleDeleteEvent
+     */
+    @Override
+    public void onRoleDelete(RoleDeleteEvent event) {
+        teamRoles.clear();
+    }
+
+    /**
+     * Reconciles every online player on the next run, as role events may have been missed while disconnected.
+     *
+     * @param event
+     *         ReconnectedEvent
+     */
+    @Override
+    public void onReconnect(ReconnectedEvent event) {
+        // events may have been missed while disconnected
+        lastReconcile = 0;
+    }
+
+    /**
+     * Marks the player linked to a user whose managed roles were changed from Discord, to put them back in step.
+     *
+     * @param user
+     *         The user whose roles changed
+     * @param roles
+     *         The roles which were added or removed
+     */
+    private void onRolesChanged(final User user, final List<Role> roles) {
+        if (!enabled || roles.stream().noneMatch(role -> teamRoles.containsValue(Optional.of(role)))) {
+            return;
+        }
+        context.getPlayerUserLinker().translate(user, new FutureCallback<MinecraftPlayer>() {
+            @Override
+            public void onSuccess(@Nullable final MinecraftPlayer result) {
+                if (result != null) {
+                    result.getUniqueIdentifier(uniqueId -> mark(uniqueId, Priority.LOW));
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                // not linked
+            }
+        });
+    }
+
+    /**
+     * Priority of a pending synchronisation; lower ordinals go first.
+     */
+    public enum Priority {
+        /**
+         * Joins and team changes.
+         */
+        HIGH,
+        /**
+         * Reconciles and changes made from Discord.
+         */
+        LOW
+    }
+
+    /**
+     * A role change waiting for a request token.
+     */
+    private static final class RoleChange {
+
+        private final Member member;
+        private final List<Role> add;
+        private final List<Role> remove;
+
+        private RoleChange(final Member member, final List<Role> add, final List<Role> remove) {
+            this.member = member;
+            this.add = add;
+            this.remove = remove;
+        }
+
+        /**
+         * Sends the part of the change the member's roles still need.
+         *
+         * @return sent Whether a request was sent.
+         */
+        private boolean send() {
+            List<Role> held = member.getRoles();
+            List<Role> missing = add.stream().filter(role -> !held.contains(role)).collect(Collectors.toList());
+            List<Role> extra = remove.stream().filter(held::contains).collect(Collectors.toList());
+            if (missing.isEmpty() && extra.isEmpty()) {
+                return false;
+            }
+            member.getGuild().getController().modifyMemberRoles(member, missing, extra).reason(REASON)
+                .queue(null, Throwable::printStackTrace);
+            return true;
+        }
+    }
+
+    /**
+     * Identifies a member, a user in one guild, among the queued role changes.
+     */
+    @Value
+    private static class MemberKey {
+
+        private final long guildId;
+        private final long userId;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final UUID uniqueId;
+        private final Priority priority;
+        private final long sequence;
+
+        private Entry(final UUID uniqueId, final Priority priority, final long sequence) {
+            this.uniqueId = uniqueId;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final Entry other) {
+            int compared = priority.compareTo(other.priority);
+            return compared != 0 ? compared : Long.compare(sequence, other.sequence);
+        }
+    }
+}
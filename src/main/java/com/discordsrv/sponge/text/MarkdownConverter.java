@@ -0,0 +1,186 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.text;
+
+import org.spongepowered.api.text.LiteralText;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.action.ClickAction;
+import org.spongepowered.api.text.format.TextStyle;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * MarkdownConverter type, for streaming a {@link Text} tree into Discord markdown.
+ * <p>
+ * The tree is walked with an explicit stack, so deeply nested texts can't overflow the call stack, and markers are only
+ * opened and closed where the effective style actually changes. Bold, italic, underline and strikethrough map to their
+ * markdown counterparts and obfuscated text becomes a spoiler; {@link ClickAction.OpenUrl} actions are appended as a
+ * link after the text they're on. Colors and hover actions have no Discord equivalent and are dropped. Instances reuse
+ * their buffers and are not thread safe.
+ */
+@ParametersAreNonnullByDefault
+public final class MarkdownConverter {
+
+    private static final int BOLD = 1;
+    private static final int ITALIC = 1 << 1;
+    private static final int UNDERLINE = 1 << 2;
+    private static final int STRIKETHROUGH = 1 << 3;
+    private static final int SPOILER = 1 << 4;
+    /**
+     * Flags in the order their markers are opened; {@link #MARKERS} has the matching markdown.
+     */
+    private static final int[] FLAGS = {BOLD, UNDERLINE, STRIKETHROUGH, SPOILER, ITALIC};
+    private static final String[] MARKERS = {"**", "__", "~~", "||", "*"};
+
+    private Text[] nodes = new Text[16];
+    private int[] styles = new int[16];
+    private int[] nextChild = new int[16];
+    private final int[] open = new int[FLAGS.length];
+    private int openCount;
+
+    /**
+     * Converts the text into markdown, optionally writing the plain content alongside it.
+     *
+     * @param text
+     *         The text to convert
+     * @param markdown
+     *         The builder to append the markdown to
+     * @param plain
+     *         The builder to append the plain content to, or null
+     */
+    public void convert(final Text text, final StringBuilder markdown, final @Nullable StringBuilder plain) {
+        openCount = 0;
+        int depth = 0;
+        push(0, text, style(0, text), markdown, plain);
+        while (depth >= 0) {
+            Text node = nodes[depth];
+            List<Text> children = node.getChildren();
+            int child = nextChild[depth]++;
+            if (child < children.size()) {
+                Text next = children.get(child);
+                int inherited = styles[depth];
+                depth++;
+                push(depth, next, style(inherited, next), markdown, plain);
+                continue;
+            }
+            Optional<ClickAction<?>> click = node.getClickAction();
+            if (click.isPresent() && click.get() instanceof ClickAction.OpenUrl) {
+                closeAll(markdown);
+                markdown.append(" (<").append(((ClickAction.OpenUrl) click.get()).getResult()).append(">)");
+            }
+            nodes[depth--] = null;
+        }
+        closeAll(markdown);
+    }
+
+    private void push(final int depth, final Text node, final int style, final StringBuilder markdown,
+                      final @Nullable StringBuilder plain) {
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, depth * 2);
+            styles = Arrays.copyOf(styles, depth * 2);
+            nextChild = Arrays.copyOf(nextChild, depth * 2);
+        }
+        nodes[depth] = node;
+        styles[depth] = style;
+        nextChild[depth] = 0;
+        String content = node instanceof LiteralText ? ((LiteralText) node).getContent() : node.toPlainSingle();
+        if (content.isEmpty()) {
+            return;
+        }
+        if (plain != null) {
+            plain.append(content);
+        }
+        if (!isBlank(content)) {
+            // markers around whitespace alone don't render, so leave the style as is
+            applyStyle(style, markdown);
+        }
+        TextRenderer.escape(content, markdown);
+    }
+
+    private void applyStyle(final int style, final StringBuilder markdown) {
+        // keep the outermost markers that still apply, close the others innermost first
+        int keep = 0;
+        while (keep < openCount && (style & open[keep]) != 0) {
+            keep++;
+        }
+        while (openCount > keep) {
+            markdown.append(MARKERS[indexOf(open[--openCount])]);
+        }
+        for (int i = 0; i < FLAGS.length; i++) {
+            if ((style & FLAGS[i]) != 0 && !isOpen(FLAGS[i])) {
+                open[openCount++] = FLAGS[i];
+                markdown.append(MARKERS[i]);
+            }
+        }
+    }
+
+    private void closeAll(final StringBuilder markdown) {
+        while (openCount > 0) {
+            markdown.append(MARKERS[indexOf(open[--openCount])]);
+        }
+    }
+
+    private boolean isOpen(final int flag) {
+        for (int i = 0; i < openCount; i++) {
+            if (open[i] == flag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(final int flag) {
+        for (int i = 0; i < FLAGS.length; i++) {
+            if (FLAGS[i] == flag) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown style flag " + flag);
+    }
+
+    private static int style(final int inherited, final Text text) {
+        TextStyle style = text.getStyle();
+        int result = inherited;
+        result = apply(result, BOLD, style.isBold());
+        result = apply(result, ITALIC, style.isItalic());
+        result = apply(result, UNDERLINE, style.hasUnderline());
+        result = apply(result, STRIKETHROUGH, style.hasStrikethrough());
+        result = apply(result, SPOILER, style.isObfuscated());
+        return result;
+    }
+
+    private static int apply(final int style, final int flag, final Optional<Boolean> value) {
+        if (!value.isPresent()) {
+            return style;
+        }
+        return value.get() ? style | flag : style & ~flag;
+    }
+
+    private static boolean isBlank(final String content) {
+        for (int i = 0; i < content.length(); i++) {
+            if (!Character.isWhitespace(content.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
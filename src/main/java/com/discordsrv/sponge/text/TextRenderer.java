@@ -0,0 +1,136 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.text;
+
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * TextRenderer type, for rendering a {@link Text} into its plain and Discord markdown forms in one pass.
+ * <p>
+ * Instances are per thread and reuse their buffers, so rendering only allocates the resulting strings. Obtain one with
+ * {@link #get()}, call {@link #render(Text)} and read the results before rendering anything else on the same thread.
+ */
+@ParametersAreNonnullByDefault
+public final class TextRenderer {
+
+    private static final int MAX_RETAINED_CAPACITY = 8192;
+    private static final char ZERO_WIDTH_SPACE = '\u200B';
+    private static final ThreadLocal<TextRenderer> RENDERERS = ThreadLocal.withInitial(TextRenderer::new);
+
+    private final StringBuilder plain = new StringBuilder(256);
+    private final StringBuilder discord = new StringBuilder(256);
+    private final MarkdownConverter converter = new MarkdownConverter();
+
+    private TextRenderer() {
+    }
+
+    /**
+     * Fetches the renderer of the current thread.
+     *
+     * @return renderer The renderer.
+     */
+    public static TextRenderer get() {
+        return RENDERERS.get();
+    }
+
+    /**
+     * Appends the input to the output, escaping anything Discord would interpret as markdown, a masked link or a
+     * mention. A zero width space after every {@code @} keeps {@code @everyone}, {@code @here}, {@code <@id>} and
+     * {@code <@&id>} from pinging anyone.
+     *
+     * @param input
+     *         The text to escape
+     * @param output
+     *         The builder to append to
+     */
+    public static void escape(final CharSequence input, final StringBuilder output) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            switch (c) {
+                case '@':
+                    output.append(c).append(ZERO_WIDTH_SPACE);
+                    break;
+                case '\\':
+                case '*':
+                case '_':
+                case '~':
+                case '`':
+                case '|':
+                case '>':
+                case '[':
+                case ']':
+                    output.append('\\');
+                    // fall through
+                default:
+                    output.append(c);
+            }
+        }
+    }
+
+    /**
+     * Renders the text, replacing the results of the previous render on this thread.
+     *
+     * @param text
+     *         The text to render
+     *
+     * @return renderer This renderer, for reading the results.
+     */
+    public TextRenderer render(final Text text) {
+        reset(plain);
+        reset(discord);
+        converter.convert(text, discord, plain);
+        return this;
+    }
+
+    /**
+     * Whether the last render produced no visible content.
+     *
+     * @return empty True if there is nothing to send.
+     */
+    public boolean isEmpty() {
+        return plain.length() == 0;
+    }
+
+    /**
+     * Fetches the plain form of the last render.
+     *
+     * @return plain The plain text.
+     */
+    public String getPlain() {
+        return plain.toString();
+    }
+
+    /**
+     * Fetches the Discord form of the last render.
+     *
+     * @return discord The text as Discord markdown.
+     */
+    public String getDiscord() {
+        return discord.toString();
+    }
+
+    private static void reset(final StringBuilder builder) {
+        builder.setLength(0);
+        if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+            // don't keep a huge buffer alive because of one huge message
+            builder.trimToSize();
+        }
+    }
+}
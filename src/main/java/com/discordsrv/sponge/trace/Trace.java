@@ -0,0 +1,90 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.trace;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Trace type, following one sampled message through the relay under a correlation id.
+ * <p>
+ * Each {@link #span(String, String)} becomes one JSON line, handed to the {@link Tracer}'s writer without blocking.
+ */
+@ParametersAreNonnullByDefault
+public final class Trace {
+
+    private final Tracer tracer;
+    private final String id;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Main constructor for the Trace type.
+     *
+     * @param tracer
+     *         The tracer to write spans with
+     * @param id
+     *         The correlation id
+     */
+    Trace(final Tracer tracer, final String id) {
+        this.tracer = tracer;
+        this.id = id;
+    }
+
+    /**
+     * Records that the message reached a hop.
+     *
+     * @param hop
+     *         The name of the hop
+     * @param detail
+     *         What happened at the hop, if anything worth noting
+     */
+    public void span(final String hop, final @Nullable String detail) {
+        StringBuilder builder = new StringBuilder(128).append("{\"trace\":\"").append(id).append("\",\"hop\":\"");
+        escape(hop, builder);
+        builder.append("\",\"time\":").append(System.currentTimeMillis()).append(",\"elapsed_us\":")
+            .append((System.nanoTime() - startNanos) / 1000);
+        if (detail != null) {
+            builder.append(",\"detail\":\"");
+            escape(detail, builder);
+            builder.append('"');
+        }
+        tracer.write(builder.append('}').toString());
+    }
+
+    /**
+     * Fetches the correlation id.
+     *
+     * @return id The correlation id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    private static void escape(final String value, final StringBuilder builder) {
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '"' || character == '\\') {
+                builder.append('\\').append(character);
+            } else if (character < 0x20) {
+                builder.append(String.format("\\u%04x", (int) character));
+            } else {
+                builder.append(character);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.trace;
+
+import com.discordsrv.core.conf.annotation.Configured;
+import com.discordsrv.core.conf.annotation.Val;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracer type, for sampling relayed messages and writing their spans to a rotating JSON lines file.
+ * <p>
+ * An unsampled message costs one random number, and a sampled one a string per span; spans are queued without
+ * blocking and dropped when the queue is full. A single daemon thread writes them, rotating the file to {@code .1},
+ * {@code .2} and so on once it exceeds {@code max_file_size} megabytes.
+ */
+@ParametersAreNonnullByDefault
+public class Tracer implements Runnable {
+
+    private final double sampleRate;
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final BlockingQueue<String> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running;
+    private @Nullable Thread thread;
+
+    /**
+     * Configured constructor.
+     *
+     * @param dataDirectory
+     *         The directory the trace file is relative to
+     * @param sampleRate
+     *         sample_rate config option, between 0 and 1
+     * @param file
+     *         file config option
+     * @param maxFileSize
+     *         max_file_size config option, in megabytes
+     * @param maxFiles
+     *         max_files config option
+     * @param queueCapacity
+     *         queue_capacity config option
+     */
+    @Configured
+    public Tracer(final @Val("data_directory") Path dataDirectory, final @Val("sample_rate") double sampleRate,
+                  final @Val("file") String file, final @Val("max_file_size") long maxFileSize,
+                  final @Val("max_files") int maxFiles, final @Val("queue_capacity") int queueCapacity) {
+        this.sampleRate = sampleRate;
+        this.file = dataDirectory.resolve(file);
+        this.maxFileSize = Math.max(1, maxFileSize) * 1024 * 1024;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    /**
+     * Starts the writer thread, if tracing is enabled.
+     */
+    public synchronized void start() {
+        if (sampleRate <= 0 || running) {
+            return;
+        }
+        running = true;
+        Thread writerThread = new Thread(this, "DiscordSRV Trace Writer");
+        writerThread.setDaemon(true);
+        thread = writerThread;
+        writerThread.start();
+    }
+
+    /**
+     * Stops the writer thread, after it has written what is already queued.
+     *
+     * @throws InterruptedException
+     *         If interrupted while waiting for the thread to finish.
+     */
+    public synchronized void stop() throws InterruptedException {
+        Thread writerThread = thread;
+        if (!running || writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        thread = null;
+    }
+
+    /**
+     * Decides whether to trace a message.
+     *
+     * @return trace A new trace, or null if the message is not sampled.
+     */
+    public @Nullable Trace sample() {
+        if (!running || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        return new Trace(this, Long.toHexString(ThreadLocalRandom.current().nextLong()));
+    }
+
+    /**
+     * Fetches the amount of spans dropped because the writer fell behind.
+     *
+     * @return dropped The drop count.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Queues a line to be written. Never blocks.
+     *
+     * @param line
+     *         The JSON line
+     */
+    void write(final String line) {
+        if (!queue.offer(line)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writer loop, do not call directly.
+     */
+    @Override
+    public void run() {
+        BufferedWriter writer = null;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            long size = Files.exists(file) ? Files.size(file) : 0;
+            writer = open();
+            while (running || !queue.isEmpty()) {
+                String line = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    writer.flush();
+                    continue;
+                }
+                if (size >= maxFileSize) {
+                    writer.close();
+                    rotate();
+                    writer = open();
+                    size = 0;
+                }
+                writer.write(line);
+                writer.newLine();
+                size += line.length() + 1;
+            }
+        } catch (IOException exception) {
+            exception.printStackTrace();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            queue.clear();
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException exception) {
+                    exception.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private BufferedWriter open() throws IOException {
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+    }
+
+    private void rotate() throws IOException {
+        Files.deleteIfExists(rotated(maxFiles));
+        for (int index = maxFiles - 1; index >= 1; index--) {
+            if (Files.exists(rotated(index))) {
+                Files.move(rotated(index), rotated(index + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rotated(final int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
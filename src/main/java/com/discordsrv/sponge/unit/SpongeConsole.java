@@ -30,13 +30,13 @@ public class SpongeConsole implements Console {
     private final SpongeContext context;
 
     /**
-     * Invokes a string command onto the console.
+     * Invokes a string command onto the console. The command is queued and runs on the server thread.
      *
      * @param cmd
      *         The command to invoke.
      */
     @Override
     public void invoke(String cmd) {
-        context.getGame().getCommandManager().process(context.getGame().getServer().getConsole(), cmd);
+        context.getConsoleCommandQueue().offer(cmd);
     }
 }
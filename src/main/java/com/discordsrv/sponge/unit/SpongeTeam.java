@@ -0,0 +1,82 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.unit;
+
+import com.discordsrv.core.api.role.Team;
+import com.discordsrv.core.api.user.MinecraftPlayer;
+import com.discordsrv.sponge.lookup.OnlinePlayerRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import lombok.Value;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Team implementation, for representing scoreboard teams for DiscordSRV-Sponge.
+ * <p>
+ * Immutable; membership is a snapshot of the member names taken when the team was indexed.
+ */
+@ParametersAreNonnullByDefault
+@Value
+public class SpongeTeam implements Team<MinecraftPlayer> {
+
+    private final String name;
+    private final ImmutableSet<String> memberNames;
+    private final OnlinePlayerRegistry playerRegistry;
+
+    /**
+     * Fetches the online members of this team.
+     *
+     * @param callback
+     *         The callback to invoke with the members.
+     */
+    @Override
+    public void getMembers(FutureCallback<Stream<MinecraftPlayer>> callback) {
+        try {
+            callback.onSuccess(playerRegistry.stream()
+                .filter(player -> memberNames.contains(player.getPlayer().getName()))
+                .map(MinecraftPlayer.class::cast));
+        } catch (Throwable throwable) {
+            callback.onFailure(throwable);
+        }
+    }
+
+    /**
+     * Fetches the name of this named instance.
+     *
+     * @param callback
+     *         The callback for this getter.
+     */
+    @Override
+    public void getName(Consumer<CharSequence> callback) {
+        callback.accept(name);
+    }
+
+    /**
+     * Fetches the identifier for this uniquely identifiable type.
+     *
+     * @param callback
+     *         The callback of this comparison.
+     */
+    @Override
+    public void getUniqueIdentifier(Consumer<String> callback) {
+        callback.accept(name);
+    }
+}
@@ -19,21 +19,28 @@ package com.discordsrv.sponge.unit.chat;
 
 import com.discordsrv.core.api.channel.Chat;
 import com.discordsrv.core.api.channel.ChatMessage;
+import com.discordsrv.sponge.relay.InboundMessageBuffer;
 import com.google.common.util.concurrent.FutureCallback;
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.channel.MessageChannel;
 
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 /**
  * Chat implementation, for representing Minecraft chats for DiscordSRV-Sponge.
  */
 @ParametersAreNonnullByDefault
-@AllArgsConstructor
+@RequiredArgsConstructor
 public abstract class SpongeChat implements Chat {
 
     private final MessageChannel messageChannel;
+    /**
+     * Buffer that delivers messages on the server thread; messages are sent directly while unset.
+     */
+    @Setter private volatile @Nullable InboundMessageBuffer inboundBuffer;
 
     /**
      * Sends a message to this instance. If the message could not be completed, the {@link
@@ -48,7 +55,12 @@ public abstract class SpongeChat implements Chat {
     @Override
     public void sendMessage(ChatMessage<Long> message, FutureCallback<Void> resultCallback) {
         try {
-            messageChannel.send(message.getSender(), Text.of(message.getMessage()));
+            InboundMessageBuffer buffer = inboundBuffer;
+            if (buffer != null) {
+                buffer.offer(messageChannel, message.getSender(), Text.of(message.getMessage()));
+            } else {
+                messageChannel.send(message.getSender(), Text.of(message.getMessage()));
+            }
             resultCallback.onSuccess(null);
         } catch (Throwable throwable) {
             resultCallback.onFailure(throwable);
@@ -0,0 +1,144 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.console;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LogRingBuffer}, checking the capacity, the order of lines across wraparounds and dropping.
+ */
+public class LogRingBufferTest {
+
+    /**
+     * The capacity is rounded up to a power of two, and lines past it are dropped and counted.
+     */
+    @Test
+    public void dropsLinesPastTheRoundedCapacity() {
+        LogRingBuffer ring = new LogRingBuffer(3);
+        for (int line = 0; line < 4; line++) {
+            assertTrue(ring.offer("line " + line));
+        }
+
+        assertFalse(ring.offer("line 4"));
+        assertFalse(ring.offer("line 5"));
+        assertEquals(2, ring.takeDropped());
+        assertEquals(0, ring.takeDropped());
+        assertEquals("line 0", ring.poll());
+    }
+
+    /**
+     * Peeking returns the oldest line without removing it, and an empty ring returns null.
+     */
+    @Test
+    public void peekDoesNotRemove() {
+        LogRingBuffer ring = new LogRingBuffer(2);
+
+        assertNull(ring.peek());
+        assertNull(ring.poll());
+        ring.offer("first");
+        ring.offer("second");
+        assertEquals("first", ring.peek());
+        assertEquals("first", ring.peek());
+        assertEquals("first", ring.poll());
+        assertEquals("second", ring.peek());
+    }
+
+    /**
+     * Lines come out in order while the positions wrap around the ring many times, and freed slots are reused.
+     */
+    @Test
+    public void keepsOrderAcrossWraparounds() {
+        LogRingBuffer ring = new LogRingBuffer(4);
+        int written = 0;
+        int read = 0;
+        for (int round = 0; round < 1000; round++) {
+            for (int line = 0; line < round % 5; line++) {
+                if (ring.offer(Integer.toString(written))) {
+                    written++;
+                }
+            }
+            for (int line = 0; line < round % 3 + 1; line++) {
+                String next = ring.poll();
+                if (next != null) {
+                    assertEquals(Integer.toString(read++), next);
+                }
+            }
+        }
+        for (String next = ring.poll(); next != null; next = ring.poll()) {
+            assertEquals(Integer.toString(read++), next);
+        }
+
+        assertEquals(written, read);
+        assertTrue(written > 4 * 100);
+    }
+
+    /**
+     * With many writers and a concurrent reader, every line is read once in per-writer order or counted as dropped.
+     *
+     * @throws InterruptedException
+     *         If interrupted while waiting for the writers
+     */
+    @Test
+    public void concurrentWritersLoseNothingUncounted() throws InterruptedException {
+        int writers = 4;
+        int lines = 20000;
+        LogRingBuffer ring = new LogRingBuffer(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            String prefix = writer + ":";
+            Thread thread = new Thread(() -> {
+                for (int line = 0; line < lines; line++) {
+                    ring.offer(prefix + line);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        int[] last = new int[writers];
+        Arrays.fill(last, -1);
+        long read = 0;
+        while (threads.stream().anyMatch(Thread::isAlive) || ring.peek() != null) {
+            String next = ring.poll();
+            if (next == null) {
+                Thread.yield();
+                continue;
+            }
+            int separator = next.indexOf(':');
+            int writer = Integer.parseInt(next.substring(0, separator));
+            int line = Integer.parseInt(next.substring(separator + 1));
+            assertTrue(next + " after " + last[writer], line > last[writer]);
+            last[writer] = line;
+            read++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals((long) writers * lines, read + ring.takeDropped());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link LinkIndex}.
+ */
+public class LinkIndexTest {
+
+    private static final UUID FIRST = new UUID(1, 2);
+    private static final UUID SECOND = new UUID(3, 4);
+
+    private final LinkIndex index = new LinkIndex(0);
+
+    /**
+     * Links are found by unique id and by snowflake.
+     */
+    @Test
+    public void findsLinksBothWays() {
+        put(FIRST, 10);
+        put(SECOND, 20);
+
+        assertEquals(10, snowflake(FIRST));
+        assertEquals(20, snowflake(SECOND));
+        assertEquals(FIRST, index.getUniqueId(10));
+        assertEquals(SECOND, index.getUniqueId(20));
+        assertNull(index.getUniqueId(30));
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * Linking either side again replaces its previous link in both directions.
+     */
+    @Test
+    public void relinkingReplacesThePreviousLink() {
+        put(FIRST, 10);
+        put(FIRST, 20);
+
+        assertEquals(20, snowflake(FIRST));
+        assertNull(index.getUniqueId(10));
+
+        put(SECOND, 20);
+
+        assertEquals(0, snowflake(FIRST));
+        assertEquals(SECOND, index.getUniqueId(20));
+        assertEquals(1, index.size());
+    }
+
+    /**
+     * Removing a link returns its snowflake and frees it, and removing a missing link returns 0.
+     */
+    @Test
+    public void removeReturnsTheRemovedSnowflake() {
+        put(FIRST, 10);
+
+        assertEquals(10, index.remove(FIRST.getMostSignificantBits(), FIRST.getLeastSignificantBits()));
+        assertEquals(0, index.remove(FIRST.getMostSignificantBits(), FIRST.getLeastSignificantBits()));
+        assertEquals(0, snowflake(FIRST));
+        assertNull(index.getUniqueId(10));
+        assertEquals(0, index.size());
+    }
+
+    /**
+     * Growing past the initial capacity and removing from crowded probe chains keeps every link reachable.
+     */
+    @Test
+    public void keepsLinksReachableAcrossResizesAndRemovals() {
+        int links = 5000;
+        for (int i = 1; i <= links; i++) {
+            put(new UUID(i, -i), i);
+        }
+        for (int i = 1; i <= links; i += 2) {
+            index.remove(i, -i);
+        }
+
+        for (int i = 1; i <= links; i++) {
+            long expected = i % 2 == 0 ? i : 0;
+            assertEquals(expected, index.getSnowflake(i, -i));
+            assertEquals(expected == 0 ? null : new UUID(i, -i), index.getUniqueId(i));
+        }
+        AtomicInteger visited = new AtomicInteger();
+        index.forEach((most, least, snowflake) -> {
+            assertEquals(most, snowflake);
+            assertEquals(-most, least);
+            visited.incrementAndGet();
+        });
+        assertEquals(links / 2, visited.get());
+        assertEquals(links / 2, index.size());
+    }
+
+    /**
+     * The nil unique id can't be linked, since its halves mark empty slots.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTheNilUniqueId() {
+        index.put(0, 0, 10);
+    }
+
+    /**
+     * Snowflake 0 can't be linked, since it marks an unlink in the log.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSnowflakeZero() {
+        put(FIRST, 0);
+    }
+
+    private void put(final UUID uniqueId, final long snowflake) {
+        index.put(uniqueId.getMostSignificantBits(), uniqueId.getLeastSignificantBits(), snowflake);
+    }
+
+    private long snowflake(final UUID uniqueId) {
+        return index.getSnowflake(uniqueId.getMostSignificantBits(), uniqueId.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link LinkStore}, checking the replay of the log after reopening, torn or truncated writes and compaction.
+ */
+public class LinkStoreTest {
+
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+    private static final UUID FIRST = new UUID(1, 2);
+    private static final UUID SECOND = new UUID(3, 4);
+    private static final UUID THIRD = new UUID(5, 6);
+
+    private Path directory;
+    private Path file;
+    private LinkStore store;
+
+    /**
+     * Opens an empty store in a temporary directory.
+     *
+     * @throws IOException
+     *         If the store can't be opened
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("links");
+        file = directory.resolve("links.dat");
+        store = LinkStore.open(file);
+    }
+
+    /**
+     * Closes and deletes the store.
+     *
+     * @throws IOException
+     *         If the store can't be deleted
+     */
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(file);
+        Files.delete(directory);
+    }
+
+    /**
+     * Reopening replays links, relinks and unlinks in order.
+     *
+     * @throws IOException
+     *         If the store can't be written or reopened
+     */
+    @Test
+    public void replaysTheLogOnOpen() throws IOException {
+        store.link(FIRST, 10);
+        store.link(SECOND, 20);
+        store.link(SECOND, 30);
+        store.unlink(FIRST);
+        store.link(THIRD, 10);
+
+        reopen();
+
+        assertEquals(0, snowflake(FIRST));
+        assertEquals(30, snowflake(SECOND));
+        assertEquals(10, snowflake(THIRD));
+        assertEquals(THIRD, store.getIndex().getUniqueId(10));
+        assertNull(store.getIndex().getUniqueId(20));
+        assertEquals(2, store.getIndex().size());
+    }
+
+    /**
+     * Replay stops at a record whose checksum doesn't match, and the records after it don't come back once the next
+     * link overwrites it.
+     *
+     * @throws IOException
+     *         If the store can't be written or reopened
+     */
+    @Test
+    public void stopsReplayAtATornRecord() throws IOException {
+        store.link(FIRST, 10);
+        store.link(SECOND, 20);
+        store.link(THIRD, 30);
+        store.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7f}), HEADER_SIZE + RECORD_SIZE + 20);
+        }
+        store = LinkStore.open(file);
+
+        assertEquals(10, snowflake(FIRST));
+        assertEquals(0, snowflake(SECOND));
+        assertEquals(0, snowflake(THIRD));
+
+        store.link(THIRD, 40);
+        reopen();
+
+        assertEquals(10, snowflake(FIRST));
+        assertEquals(0, snowflake(SECOND));
+        assertEquals(40, snowflake(THIRD));
+    }
+
+    /**
+     * A log cut off in the middle of a record keeps the records before it.
+     *
+     * @throws IOException
+     *         If the store can't be written or reopened
+     */
+    @Test
+    public void keepsCompleteRecordsOfATruncatedLog() throws IOException {
+        store.link(FIRST, 10);
+        store.link(SECOND, 20);
+        store.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(HEADER_SIZE + RECORD_SIZE + RECORD_SIZE / 2);
+        }
+        store = LinkStore.open(file);
+
+        assertEquals(10, snowflake(FIRST));
+        assertEquals(0, snowflake(SECOND));
+        assertEquals(1, store.getIndex().size());
+    }
+
+    /**
+     * A file that isn't a link store is refused rather than overwritten.
+     *
+     * @throws IOException
+     *         If the file can't be written
+     */
+    @Test
+    public void refusesAForeignFile() throws IOException {
+        Path foreign = directory.resolve("foreign.dat");
+        Files.write(foreign, new byte[HEADER_SIZE * 2]);
+        try {
+            LinkStore.open(foreign).close();
+            fail("opened a file without a link store header");
+        } catch (IOException expected) {
+            assertEquals(HEADER_SIZE * 2, Files.size(foreign));
+        } finally {
+            Files.delete(foreign);
+        }
+    }
+
+    /**
+     * Relinking often enough compacts the log down to the live links, which survive reopening.
+     *
+     * @throws IOException
+     *         If the store can't be written, compacted or reopened
+     */
+    @Test
+    public void compactsToTheLiveLinks() throws IOException {
+        int relinks = 10000;
+        store.link(FIRST, 10);
+        for (int i = 1; i <= relinks; i++) {
+            store.link(SECOND, 100 + i);
+        }
+        store.close();
+        long size = Files.size(file);
+        store = LinkStore.open(file);
+
+        assertTrue("log of " + size + " bytes was not compacted", size < (long) relinks * RECORD_SIZE);
+        assertEquals(10, snowflake(FIRST));
+        assertEquals(100 + relinks, snowflake(SECOND));
+        assertEquals(2, store.getIndex().size());
+
+        store.compact();
+        reopen();
+
+        assertEquals(10, snowflake(FIRST));
+        assertEquals(100 + relinks, snowflake(SECOND));
+        assertEquals(2, store.getIndex().size());
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = LinkStore.open(file);
+    }
+
+    private long snowflake(final UUID uniqueId) {
+        return store.getIndex().getSnowflake(uniqueId.getMostSignificantBits(), uniqueId.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.link;
+
+import com.discordsrv.core.api.user.MinecraftPlayer;
+import com.discordsrv.core.api.user.PlayerUserLinker;
+import com.discordsrv.sponge.lookup.DiscordUserIndex;
+import com.discordsrv.sponge.lookup.OnlinePlayerRegistry;
+import com.discordsrv.sponge.unit.SpongeOfflinePlayer;
+import com.google.common.util.concurrent.FutureCallback;
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link StoredPlayerUserLinker}, checking that stored links are answered first and follow the wrapped
+ * linker once refreshed.
+ */
+public class StoredPlayerUserLinkerTest {
+
+    private static final UUID PLAYER = new UUID(0x0123456789abcdefL, 0xfedcba9876543210L);
+    private static final long SNOWFLAKE = 81384788765712384L;
+
+    private final Map<UUID, User> links = new HashMap<>();
+    private final List<Member> members = new ArrayList<>();
+    private final Guild guild = proxy(Guild.class, (method, args) -> {
+        switch (method) {
+            case "getMembers":
+                return members;
+            case "getMember":
+                return members.stream().filter(member -> member.getUser() == args[0]).findFirst().orElse(null);
+            default:
+                throw new UnsupportedOperationException(method);
+        }
+    });
+    private final Queue<Runnable> refreshes = new ArrayDeque<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private Path directory;
+    private Path file;
+    private LinkStore store;
+    private DiscordUserIndex userIndex;
+    private StoredPlayerUserLinker linker;
+
+    /**
+     * Opens an empty store in a temporary directory.
+     *
+     * @throws IOException
+     *         If the store can't be opened
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("links");
+        file = directory.resolve("links.dat");
+        store = LinkStore.open(file);
+        userIndex = new DiscordUserIndex();
+        linker = new StoredPlayerUserLinker(new MapLinker(), store, userIndex, new OnlinePlayerRegistry(),
+            refreshes::add);
+    }
+
+    /**
+     * Closes and deletes the store.
+     *
+     * @throws IOException
+     *         If the store can't be deleted
+     */
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(file);
+        Files.delete(directory);
+    }
+
+    /**
+     * Links found through the wrapped linker are written to the store.
+     */
+    @Test
+    public void recordsLinksFromTheWrappedLinker() {
+        User user = user(SNOWFLAKE);
+        links.put(PLAYER, user);
+
+        assertSame(user, translate(new SpongeOfflinePlayer(PLAYER, "player")));
+        assertEquals(SNOWFLAKE, snowflake(store));
+        assertEquals(1, requests.get());
+    }
+
+    /**
+     * Stored links are answered without asking the wrapped linker, which is asked once in the background, however
+     * often the link is looked up meanwhile.
+     */
+    @Test
+    public void answersStoredLinksWithoutWaitingForTheWrappedLinker() {
+        User user = user(SNOWFLAKE);
+        links.put(PLAYER, user);
+        translate(new SpongeOfflinePlayer(PLAYER, "player"));
+
+        assertSame(user, translate(new SpongeOfflinePlayer(PLAYER, "player")));
+        assertSame(user, translate(new SpongeOfflinePlayer(PLAYER, "player")));
+        assertEquals(1, requests.get());
+        assertEquals(1, refreshes.size());
+
+        runRefreshes();
+        assertEquals(2, requests.get());
+    }
+
+    /**
+     * Unlinking in the wrapped linker removes the stored link once refreshed.
+     *
+     * @throws IOException
+     *         If the store can't be reopened
+     */
+    @Test
+    public void unlinkInTheWrappedLinkerIsVisibleOnceRefreshed() throws IOException {
+        links.put(PLAYER, user(SNOWFLAKE));
+        translate(new SpongeOfflinePlayer(PLAYER, "player"));
+
+        links.remove(PLAYER);
+        translate(new SpongeOfflinePlayer(PLAYER, "player"));
+        runRefreshes();
+
+        assertNull(translate(new SpongeOfflinePlayer(PLAYER, "player")));
+        assertEquals(0, snowflake(store));
+        store.close();
+        store = LinkStore.open(file);
+        assertEquals(0, snowflake(store));
+    }
+
+    /**
+     * Linking another user in the wrapped linker replaces the stored link once refreshed.
+     */
+    @Test
+    public void relinkInTheWrappedLinkerReplacesTheStoredLink() {
+        links.put(PLAYER, user(SNOWFLAKE));
+        translate(new SpongeOfflinePlayer(PLAYER, "player"));
+
+        User other = user(SNOWFLAKE + 1);
+        links.put(PLAYER, other);
+        translate(new SpongeOfflinePlayer(PLAYER, "player"));
+        runRefreshes();
+
+        assertSame(other, translate(new SpongeOfflinePlayer(PLAYER, "player")));
+        assertEquals(SNOWFLAKE + 1, snowflake(store));
+        assertNull(store.getIndex().getUniqueId(SNOWFLAKE));
+    }
+
+    /**
+     * A stored link is answered when translating from the user as well, and unlinking in the wrapped linker removes it
+     * once refreshed.
+     */
+    @Test
+    public void unlinkIsVisibleWhenTranslatingTheUser() {
+        User user = user(SNOWFLAKE);
+        links.put(PLAYER, user);
+        translate(new SpongeOfflinePlayer(PLAYER, "player"));
+
+        links.remove(PLAYER);
+
+        AtomicReference<MinecraftPlayer> result = new AtomicReference<>();
+        linker.translate(user, callback(result));
+        AtomicReference<UUID> uniqueId = new AtomicReference<>();
+        result.get().getUniqueIdentifier(uniqueId::set);
+        assertEquals(PLAYER, uniqueId.get());
+        runRefreshes();
+
+        linker.translate(user, callback(result));
+        assertNull(result.get());
+        assertNull(store.getIndex().getUniqueId(SNOWFLAKE));
+    }
+
+    /**
+     * Bulk translations answer stored links from the index and only ask the wrapped linker for the rest.
+     */
+    @Test
+    public void bulkTranslationOnlyAsksForMissingLinks() {
+        UUID other = new UUID(1, 2);
+        links.put(PLAYER, user(SNOWFLAKE));
+        links.put(other, user(SNOWFLAKE + 1));
+        translate(new SpongeOfflinePlayer(PLAYER, "player"));
+        requests.set(0);
+
+        AtomicReference<Map<UUID, Long>> result = new AtomicReference<>();
+        linker.translatePlayers(Arrays.asList(PLAYER, other, new UUID(3, 4)), callback(result));
+
+        Map<UUID, Long> expected = new HashMap<>();
+        expected.put(PLAYER, SNOWFLAKE);
+        expected.put(other, SNOWFLAKE + 1);
+        assertEquals(expected, result.get());
+        assertEquals(2, requests.get());
+        assertEquals(SNOWFLAKE + 1, store.getIndex().getSnowflake(1, 2));
+    }
+
+    private @Nullable User translate(final MinecraftPlayer player) {
+        AtomicReference<User> result = new AtomicReference<>();
+        linker.translate(player, callback(result));
+        return result.get();
+    }
+
+    private void runRefreshes() {
+        Runnable refresh;
+        while ((refresh = refreshes.poll()) != null) {
+            refresh.run();
+        }
+    }
+
+    private static long snowflake(final LinkStore store) {
+        return store.getIndex().getSnowflake(PLAYER.getMostSignificantBits(), PLAYER.getLeastSignificantBits());
+    }
+
+    /**
+     * Creates a user, and indexes it as a member of the guild.
+     *
+     * @param id
+     *         The id of the user
+     *
+     * @return user The indexed user.
+     */
+    private User user(final long id) {
+        User user = proxy(User.class, (method, args) -> {
+            switch (method) {
+                case "getIdLong":
+                    return id;
+                case "getName":
+                    return "user" + id;
+                case "getMutualGuilds":
+                    return Collections.singletonList(guild);
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+        members.add(proxy(Member.class, (method, args) -> {
+            switch (method) {
+                case "getUser":
+                    return user;
+                case "getNickname":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        }));
+        userIndex.rebuild(proxy(JDA.class, (method, args) -> {
+            if ("getGuilds".equals(method)) {
+                return Collections.singletonList(guild);
+            }
+            throw new UnsupportedOperationException(method);
+        }));
+        return user;
+    }
+
+    private static <T> FutureCallback<T> callback(final AtomicReference<T> result) {
+        return new FutureCallback<T>() {
+            @Override
+            public void onSuccess(@Nullable final T value) {
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+        };
+    }
+
+    private static <T> T proxy(final Class<T> type, final Answer answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    return answer.apply(method.getName(), args);
+            }
+        }));
+    }
+
+    /**
+     * Answers a call made on a proxy.
+     */
+    private interface Answer {
+
+        Object apply(String method, Object[] args);
+    }
+
+    private class MapLinker implements PlayerUserLinker {
+
+        @Override
+        public void translate(final MinecraftPlayer player, final FutureCallback<User> callback) {
+            requests.incrementAndGet();
+            player.getUniqueIdentifier(uniqueId -> callback.onSuccess(links.get(uniqueId)));
+        }
+
+        @Override
+        public void translate(final User user, final FutureCallback<MinecraftPlayer> callback) {
+            requests.incrementAndGet();
+            MinecraftPlayer result = null;
+            for (Map.Entry<UUID, User> entry : links.entrySet()) {
+                if (entry.getValue().getIdLong() == user.getIdLong()) {
+                    result = new SpongeOfflinePlayer(entry.getKey(), null);
+                }
+            }
+            callback.onSuccess(result);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.lookup;
+
+import net.dv8tion.jda.core.JDA;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link DiscordUserIndex}.
+ */
+public class DiscordUserIndexTest {
+
+    private final List<Member> members = new ArrayList<>();
+    private final Map<User, Member> membersByUser = new HashMap<>();
+    private final Guild guild = proxy(Guild.class, (method, args) -> {
+        switch (method) {
+            case "getMembers":
+                return members;
+            case "getMember":
+                return membersByUser.get(args[0]);
+            default:
+                throw new UnsupportedOperationException(method);
+        }
+    });
+    private DiscordUserIndex index;
+
+    /**
+     * Indexes a guild of users, some of them with a nickname.
+     */
+    @Before
+    public void setUp() {
+        member(1, "zebra", "alpaca");
+        member(2, "albatross", null);
+        member(3, "aardvark", null);
+        member(4, "Alligator", null);
+        member(5, "bear", null);
+        JDA jda = proxy(JDA.class, (method, args) -> {
+            if ("getGuilds".equals(method)) {
+                return Collections.singletonList(guild);
+            }
+            throw new UnsupportedOperationException(method);
+        });
+        index = new DiscordUserIndex();
+        index.rebuild(jda);
+    }
+
+    /**
+     * Users are found by id.
+     */
+    @Test
+    public void findsUsersById() {
+        assertSame(members.get(1).getUser(), index.getUser(2));
+        assertNull(index.getUser(6));
+    }
+
+    /**
+     * Users are found by name or nickname, ignoring case.
+     */
+    @Test
+    public void findsUsersByNameOrNickname() {
+        assertEquals(Collections.singletonList(4L), ids(index.getUsersByName("alligator")));
+        assertEquals(Collections.singletonList(1L), ids(index.getUsersByName("ALPACA")));
+        assertEquals(Collections.singletonList(1L), ids(index.getUsersByName("zebra")));
+    }
+
+    /**
+     * Prefix matches are ordered by the name they matched on, and limited.
+     */
+    @Test
+    public void findsUsersByPrefixInNameOrder() {
+        assertEquals(Arrays.asList(3L, 2L, 4L, 1L), ids(index.findUsersByPrefix("a", 10)));
+        assertEquals(Arrays.asList(3L, 2L), ids(index.findUsersByPrefix("A", 2)));
+        assertEquals(Collections.singletonList(5L), ids(index.findUsersByPrefix("be", 10)));
+    }
+
+    private void member(final long id, final String name, final @Nullable String nickname) {
+        User user = proxy(User.class, (method, args) -> {
+            switch (method) {
+                case "getIdLong":
+                    return id;
+                case "getName":
+                    return name;
+                case "getMutualGuilds":
+                    return Collections.singletonList(guild);
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+        Member member = proxy(Member.class, (method, args) -> {
+            switch (method) {
+                case "getUser":
+                    return user;
+                case "getNickname":
+                    return nickname;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+        members.add(member);
+        membersByUser.put(user, member);
+    }
+
+    private static List<Long> ids(final List<User> users) {
+        return users.stream().map(User::getIdLong).collect(Collectors.toList());
+    }
+
+    private static <T> T proxy(final Class<T> type, final Answer answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    return answer.apply(method.getName(), args);
+            }
+        }));
+    }
+
+    /**
+     * Answers a call made on a proxy.
+     */
+    private interface Answer {
+
+        Object apply(String method, Object[] args);
+    }
+}
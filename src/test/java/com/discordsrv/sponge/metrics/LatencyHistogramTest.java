@@ -0,0 +1,149 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LatencyHistogram}, checking the bucket boundaries and the percentile estimates.
+ */
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * An empty histogram reports 0 for every percentile.
+     */
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(0.5));
+        assertEquals(0, histogram.getPercentileMicros(1));
+    }
+
+    /**
+     * Latencies are truncated to whole microseconds, negative ones count as 0, and count, sum and max follow them.
+     */
+    @Test
+    public void tracksCountSumAndMax() {
+        record(1999, TimeUnit.NANOSECONDS);
+        record(-5, TimeUnit.NANOSECONDS);
+        record(40, TimeUnit.MICROSECONDS);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(41, histogram.getSumMicros());
+        assertEquals(40, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(0));
+    }
+
+    /**
+     * Below eight microseconds every value has a bucket of its own, so percentiles are exact.
+     */
+    @Test
+    public void smallLatenciesAreExact() {
+        for (long micros = 0; micros < 8; micros++) {
+            record(micros, TimeUnit.MICROSECONDS);
+        }
+
+        for (int rank = 1; rank <= 8; rank++) {
+            assertEquals(rank - 1, histogram.getPercentileMicros(rank / 8.0));
+        }
+    }
+
+    /**
+     * Every power of two from 4 starts a new bucket, so the value before it falls in an earlier one.
+     */
+    @Test
+    public void powersOfTwoStartNewBuckets() {
+        // latencies are recorded in nanoseconds, which overflow past 2^53 microseconds
+        for (int exponent = 2; exponent <= 53; exponent++) {
+            long power = 1L << exponent;
+            LatencyHistogram boundary = new LatencyHistogram();
+            boundary.record(TimeUnit.MICROSECONDS.toNanos(power - 1));
+            boundary.record(TimeUnit.MICROSECONDS.toNanos(power));
+            long[] snapshot = boundary.snapshot();
+
+            assertEquals("at 2^" + exponent, 1, LatencyHistogram.countAtOrBelow(snapshot, power - 1));
+            assertEquals("at 2^" + exponent, 2, LatencyHistogram.countAtOrBelow(snapshot, power * 2 - 1));
+        }
+    }
+
+    /**
+     * Cumulative counts at power of two bounds include exactly the latencies at or below the bound.
+     */
+    @Test
+    public void countsAtOrBelowBounds() {
+        for (long micros : new long[]{1, 2, 3, 4, 7, 8, 15, 16, 1000}) {
+            record(micros, TimeUnit.MICROSECONDS);
+        }
+        long[] snapshot = histogram.snapshot();
+
+        assertEquals(0, LatencyHistogram.countAtOrBelow(snapshot, 0));
+        assertEquals(5, LatencyHistogram.countAtOrBelow(snapshot, 7));
+        assertEquals(7, LatencyHistogram.countAtOrBelow(snapshot, 15));
+        assertEquals(8, LatencyHistogram.countAtOrBelow(snapshot, 511));
+        assertEquals(9, LatencyHistogram.countAtOrBelow(snapshot, 1023));
+        assertEquals(9, LatencyHistogram.countAtOrBelow(snapshot, Long.MAX_VALUE));
+    }
+
+    /**
+     * A percentile is the upper bound of its bucket, at most 25% above the true value and never above the maximum.
+     */
+    @Test
+    public void percentilesAreWithinTheBucketError() {
+        for (long micros = 1; micros < 10_000_000; micros = micros * 11 / 10 + 1) {
+            LatencyHistogram single = new LatencyHistogram();
+            single.record(TimeUnit.MICROSECONDS.toNanos(micros));
+            single.record(TimeUnit.SECONDS.toNanos(100));
+            long median = single.getPercentileMicros(0.5);
+
+            assertTrue(micros + " estimated as " + median, median >= micros && median <= micros + micros / 4);
+        }
+
+        record(8, TimeUnit.MICROSECONDS);
+        assertEquals(8, histogram.getPercentileMicros(1));
+    }
+
+    /**
+     * Percentiles are taken over the ranks of the recorded latencies.
+     */
+    @Test
+    public void percentilesFollowRanks() {
+        for (int i = 0; i < 90; i++) {
+            record(1, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < 9; i++) {
+            record(100, TimeUnit.MILLISECONDS);
+        }
+        record(1, TimeUnit.SECONDS);
+
+        assertEquals(1023, histogram.getPercentileMicros(0.5));
+        assertEquals(1023, histogram.getPercentileMicros(0.9));
+        assertEquals(114687, histogram.getPercentileMicros(0.99));
+        assertEquals(1_000_000, histogram.getPercentileMicros(1));
+    }
+
+    private void record(final long duration, final TimeUnit unit) {
+        histogram.record(unit.toNanos(duration));
+    }
+}
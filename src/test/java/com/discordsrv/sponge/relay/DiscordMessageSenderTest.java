@@ -0,0 +1,249 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import com.discordsrv.sponge.metrics.RelayMetrics;
+import net.dv8tion.jda.core.entities.TextChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DiscordMessageSender}, checking how lines are coalesced into messages and split across them.
+ */
+public class DiscordMessageSenderTest {
+
+    private static final long FLUSH_WINDOW = 50;
+    private static final int MAX_BACKLOG = 10;
+    private static final long IN_FLIGHT_TIMEOUT = 300;
+
+    private final BlockingQueue<Sent> sent = new LinkedBlockingQueue<>();
+    private final TextChannel channel = (TextChannel) Proxy.newProxyInstance(TextChannel.class.getClassLoader(),
+        new Class<?>[]{TextChannel.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getIdLong":
+                    return 1L;
+                case "hashCode":
+                    return 1;
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    private ScheduledExecutorService executor;
+    private WebhookSender webhookSender;
+    private DiscordMessageSender sender;
+    private volatile boolean acknowledging = true;
+
+    /**
+     * Creates a sender whose bot messages are recorded instead of sent.
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        webhookSender = new WebhookSender(executor, false, "http://localhost", "", 1);
+        sender = new DiscordMessageSender(executor, webhookSender, new RelayMetrics(), FLUSH_WINDOW, MAX_BACKLOG,
+            IN_FLIGHT_TIMEOUT) {
+            @Override
+            void sendAsBot(final TextChannel target, final String message, final Runnable onSuccess,
+                           final Consumer<Throwable> onFailure) {
+                Sent record = new Sent(message, onSuccess);
+                sent.add(record);
+                if (acknowledging) {
+                    onSuccess.run();
+                }
+            }
+        };
+    }
+
+    /**
+     * Stops the executor.
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        webhookSender.shutdown();
+    }
+
+    /**
+     * Lines arriving within the flush window go out as one message.
+     *
+     * @throws InterruptedException
+     *         If interrupted while waiting for a message
+     */
+    @Test
+    public void coalescesLinesWithinTheFlushWindow() throws InterruptedException {
+        sender.send(channel, "one");
+        sender.send(channel, "two");
+        sender.send(channel, "three");
+
+        assertEquals("one\ntwo\nthree", next().message);
+        assertNull(sent.poll(FLUSH_WINDOW * 3, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Lines arriving while a message is in flight are collected and sent together once it is acknowledged.
+     *
+     * @throws InterruptedException
+     *         If interrupted while waiting for a message
+     */
+    @Test
+    public void collectsLinesWhileInFlight() throws InterruptedException {
+        acknowledging = false;
+        sender.send(channel, "first");
+        Sent first = next();
+        sender.send(channel, "second");
+        sender.send(channel, "third");
+        assertNull(sent.poll(FLUSH_WINDOW * 3, TimeUnit.MILLISECONDS));
+
+        first.onSuccess.run();
+
+        assertEquals("second\nthird", next().message);
+    }
+
+    /**
+     * Lines beyond the backlog are dropped and counted.
+     *
+     * @throws InterruptedException
+     *         If interrupted while waiting for a message
+     */
+    @Test
+    public void dropsLinesBeyondTheBacklog() throws InterruptedException {
+        acknowledging = false;
+        sender.send(channel, "first");
+        next();
+        for (int i = 0; i < MAX_BACKLOG + 5; i++) {
+            sender.send(channel, "line " + i);
+        }
+
+        assertEquals(5, sender.getDroppedCount());
+    }
+
+    /**
+     * A message that is never acknowledged stops holding back the channel after the timeout, and its late
+     * acknowledgement doesn't release the message sent after it.
+     *
+     * @throws InterruptedException
+     *         If interrupted while waiting for a message
+     */
+    @Test
+    public void timesOutMessagesInFlight() throws InterruptedException {
+        acknowledging = false;
+        sender.send(channel, "lost");
+        Sent lost = next();
+        sender.send(channel, "after");
+
+        Sent after = next();
+        assertEquals("after", after.message);
+        lost.onSuccess.run();
+        sender.send(channel, "held");
+        assertNull(sent.poll(FLUSH_WINDOW * 3, TimeUnit.MILLISECONDS));
+        after.onSuccess.run();
+        assertEquals("held", next().message);
+    }
+
+    /**
+     * Lines longer than a message are split at whitespace into messages within the limit, losing nothing.
+     *
+     * @throws InterruptedException
+     *         If interrupted while waiting for a message
+     */
+    @Test
+    public void splitsLongLinesAtWhitespace() throws InterruptedException {
+        StringBuilder line = new StringBuilder();
+        while (line.length() < DiscordMessageSender.MAX_MESSAGE_LENGTH * 2 + 100) {
+            line.append("word ").append(line.length()).append(' ');
+        }
+        sender.send(channel, line.toString());
+
+        List<String> messages = new ArrayList<>();
+        StringBuilder joined = new StringBuilder();
+        while (joined.length() < line.length()) {
+            String message = next().message;
+            messages.add(message);
+            joined.append(message.replace("\n", ""));
+        }
+        assertEquals(line.toString(), joined.toString());
+        for (String message : messages) {
+            assertTrue(message.length() <= DiscordMessageSender.MAX_MESSAGE_LENGTH);
+            for (String part : message.split("\n")) {
+                assertTrue(part.endsWith(" ") || line.toString().endsWith(part));
+            }
+        }
+    }
+
+    /**
+     * A split prefers whitespace outside of markdown spans, unless that leaves less than half a part.
+     */
+    @Test
+    public void splitPointKeepsMarkdownSpansWhole() {
+        String line = "aaaaaaaaaa **bold text** bbbb";
+        assertEquals("aaaaaaaaaa **bold text** ".length(), DiscordMessageSender.splitPoint(line, 0, 26));
+        assertEquals("aaaaaaaaaa ".length(), DiscordMessageSender.splitPoint(line, 0, 20));
+        assertEquals("aaa ".length() + "aaaaaaaaaa ".length(), DiscordMessageSender.splitPoint("aaa " + line, 4, 20));
+        assertEquals("aa **bold text ".length(), DiscordMessageSender.splitPoint("aa **bold text here** bbb", 0, 20));
+    }
+
+    /**
+     * A hard cut never separates a surrogate pair or an escape from what it escapes.
+     */
+    @Test
+    public void splitPointKeepsPairsWhole() {
+        String emoji = "\uD83D\uDE00";
+        String line = "aaaaaaaaa" + emoji + "bbbbbbbbbb";
+        assertEquals(9, DiscordMessageSender.splitPoint(line, 0, 10));
+        String escaped = "aaaaaaaaa\\*bbbbbbbbbb";
+        assertEquals(9, DiscordMessageSender.splitPoint(escaped, 0, 10));
+        assertEquals(line.length(), DiscordMessageSender.splitPoint(line, 0, line.length()));
+    }
+
+    private Sent next() throws InterruptedException {
+        Sent next = sent.poll(IN_FLIGHT_TIMEOUT * 5, TimeUnit.MILLISECONDS);
+        assertTrue("no message was sent", next != null);
+        return next;
+    }
+
+    /**
+     * A message passed to the bot.
+     */
+    private static final class Sent {
+
+        private final String message;
+        private final Runnable onSuccess;
+
+        private Sent(final String message, final Runnable onSuccess) {
+            this.message = message;
+            this.onSuccess = onSuccess;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.relay;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.entities.Webhook;
+import net.dv8tion.jda.core.requests.RestAction;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link WebhookSender}, run against a local stand-in for Discord's webhook API.
+ */
+public class WebhookSenderTest {
+
+    private static final UUID PLAYER = new UUID(0x0123456789abcdefL, 0xfedcba9876543210L);
+
+    private final BlockingQueue<Posted> posted = new LinkedBlockingQueue<>();
+    private final Queue<Reply> replies = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger webhookLookups = new AtomicInteger();
+    private HttpServer server;
+    private ScheduledExecutorService executor;
+    private WebhookSender sender;
+    private TextChannel channel;
+
+    /**
+     * Starts the stand-in and a sender pointed at it.
+     *
+     * @throws IOException
+     *         If the stand-in can't be bound
+     */
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/webhooks/", this::handle);
+        server.start();
+        executor = Executors.newSingleThreadScheduledExecutor();
+        String apiBase = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/api/";
+        sender = new WebhookSender(executor, true, apiBase, "https://avatars.example/{uuid}/{name}", 16);
+        Webhook webhook = proxy(Webhook.class, (method, args) -> {
+            switch (method) {
+                case "getId":
+                    return "2";
+                case "getName":
+                    return "DiscordSRV";
+                case "getToken":
+                    return "token";
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+        RestAction<List<Webhook>> webhooks =
+            new RestAction.EmptyRestAction<>(null, Collections.singletonList(webhook));
+        channel = proxy(TextChannel.class, (method, args) -> {
+            switch (method) {
+                case "getIdLong":
+                    return 1L;
+                case "getWebhooks":
+                    webhookLookups.incrementAndGet();
+                    return webhooks;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+    }
+
+    /**
+     * Stops the sender and the stand-in.
+     */
+    @After
+    public void tearDown() {
+        sender.shutdown();
+        executor.shutdownNow();
+        server.stop(0);
+    }
+
+    /**
+     * The channel's webhook is looked up once and every message is posted to it as the player.
+     *
+     * @throws Exception
+     *         If a message isn't sent in time
+     */
+    @Test
+    public void reusesTheWebhookOfAChannel() throws Exception {
+        send("hello");
+        send("again");
+
+        assertEquals(1, webhookLookups.get());
+        Posted first = next();
+        Posted second = next();
+        assertEquals("/api/webhooks/2/token", first.path);
+        assertEquals("/api/webhooks/2/token", second.path);
+        assertEquals("hello", first.body.getString("content"));
+        assertEquals("again", second.body.getString("content"));
+        assertEquals("Notch", first.body.getString("username"));
+        assertEquals("https://avatars.example/" + PLAYER + "/Notch", first.body.getString("avatar_url"));
+    }
+
+    /**
+     * Messages are posted with an empty allowed mentions list, so they can't ping anyone.
+     *
+     * @throws Exception
+     *         If the message isn't sent in time
+     */
+    @Test
+    public void allowsNoMentions() throws Exception {
+        send("@everyone look");
+
+        JSONObject allowedMentions = next().body.getJSONObject("allowed_mentions");
+        assertEquals(1, allowedMentions.length());
+        assertEquals(0, allowedMentions.getJSONArray("parse").length());
+    }
+
+    /**
+     * A rate-limited message is posted again once the time Discord asks for has passed.
+     *
+     * @throws Exception
+     *         If the message isn't sent in time
+     */
+    @Test
+    public void retriesAfterTheRateLimit() throws Exception {
+        replies.add(new Reply(429, new JSONObject().put("retry_after", 200).put("global", false).toString()));
+
+        long start = System.nanoTime();
+        send("limited");
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+        Posted first = next();
+        Posted second = next();
+        assertEquals("limited", first.body.getString("content"));
+        assertEquals("limited", second.body.getString("content"));
+        assertNull(posted.poll());
+    }
+
+    /**
+     * A message that stays rate-limited is given up on after a few attempts.
+     *
+     * @throws Exception
+     *         If the sender doesn't give up in time
+     */
+    @Test
+    public void givesUpWhileStillRateLimited() throws Exception {
+        for (int attempt = 0; attempt < 5; attempt++) {
+            replies.add(new Reply(429, new JSONObject().put("retry_after", 10).toString()));
+        }
+
+        try {
+            send("limited");
+            fail("sent while rate-limited");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause().getMessage().contains("429"));
+        }
+        assertEquals(3, posted.size());
+    }
+
+    private void send(final String content) throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        sender.execute(channel, PLAYER, "Notch", content, () -> sent.complete(null), sent::completeExceptionally);
+        sent.get(5, TimeUnit.SECONDS);
+    }
+
+    private Posted next() throws InterruptedException {
+        Posted next = posted.poll(5, TimeUnit.SECONDS);
+        if (next == null) {
+            throw new AssertionError("nothing was posted");
+        }
+        return next;
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            posted.add(new Posted(exchange.getRequestURI().getPath(), new JSONObject(read(exchange.getRequestBody()))));
+            Reply reply = replies.poll();
+            if (reply == null || reply.body == null) {
+                exchange.sendResponseHeaders(reply == null ? 204 : reply.code, -1);
+                return;
+            }
+            byte[] bytes = reply.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(reply.code, bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String read(final InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static <T> T proxy(final Class<T> type, final Answer answer) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    return answer.apply(method.getName(), args);
+            }
+        }));
+    }
+
+    /**
+     * Answers a call made on a proxy.
+     */
+    private interface Answer {
+
+        Object apply(String method, Object[] args);
+    }
+
+    /**
+     * A request the stand-in received.
+     */
+    private static final class Posted {
+
+        private final String path;
+        private final JSONObject body;
+
+        private Posted(final String path, final JSONObject body) {
+            this.path = path;
+            this.body = body;
+        }
+    }
+
+    /**
+     * A response the stand-in gives instead of 204 No Content.
+     */
+    private static final class Reply {
+
+        private final int code;
+        private final @Nullable String body;
+
+        private Reply(final int code, final @Nullable String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * DiscordSRV-Sponge: Sponge platform support plugin or the DiscordSRV project
+ * Copyright (C) 2018 DiscordSRV
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.discordsrv.sponge.text;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link TextRenderer#escape(CharSequence, StringBuilder)}.
+ */
+public class TextRendererTest {
+
+    /**
+     * Markdown characters are escaped with a backslash.
+     */
+    @Test
+    public void escapesMarkdown() {
+        assertEquals("\\*bold\\* \\_it\\_ \\~\\~s\\~\\~ \\`c\\` \\|\\|x\\|\\| \\> q \\\\",
+            escape("*bold* _it_ ~~s~~ `c` ||x|| > q \\"));
+    }
+
+    /**
+     * Mentions of everyone, here, users and roles can't ping anyone.
+     */
+    @Test
+    public void neutralisesMentions() {
+        assertEquals("@\u200Beveryone @\u200Bhere <@\u200B80351110224678912\\> <@\u200B&41771983423143936\\>",
+            escape("@everyone @here <@80351110224678912> <@&41771983423143936>"));
+    }
+
+    /**
+     * Masked links lose their brackets, so the url is shown as is.
+     */
+    @Test
+    public void escapesMaskedLinks() {
+        assertEquals("\\[click\\](https://example.com)", escape("[click](https://example.com)"));
+    }
+
+    private static String escape(final String input) {
+        StringBuilder output = new StringBuilder();
+        TextRenderer.escape(input, output);
+        return output.toString();
+    }
+}